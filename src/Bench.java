@@ -0,0 +1,75 @@
+package b.img;
+
+import java.util.Random;
+
+/**
+ * Bench.java
+ *
+ * Time the per-pixel cost of the inner loops on synthetic pixels, for
+ * comparing implementations on a given machine. Run with "ant bench", or
+ * the jar on the class path with this as the main class.
+ **/
+public class Bench{
+  private static final int PIXELS = 1 << 20;
+  private static final int ROUNDS = 5;
+
+  /**
+   * main()
+   *
+   * Run each benchmark, printing the best time per pixel of a few rounds.
+   *
+   * @param args The command line arguments, unused.
+   **/
+  public static void main(String[] args){
+    int[] px = pixels(new Random(1));
+    System.out.println("Kernels: " + Kernels.get().getName());
+    for(Distance.METRIC m : Distance.METRIC.values()){
+      int limit = m.limit(32);
+      double dist = Double.MAX_VALUE;
+      double run = Double.MAX_VALUE;
+      long sink = 0;
+      for(int r = 0; r < ROUNDS; r++){
+        /* Neighbouring pairs, as the region growers compare them */
+        long start = System.nanoTime();
+        for(int i = 1; i < px.length; i++){
+          sink += m.dist(px[i - 1], px[i]);
+        }
+        dist = Math.min(dist, (System.nanoTime() - start) / (double)px.length);
+        /* Runs across the pixels, as svgNormal finds them */
+        start = System.nanoTime();
+        for(int i = 0; i < px.length;){
+          i = Math.max(i + 1, m.run(px, i + 1, px.length, px[i], limit));
+          ++sink;
+        }
+        run = Math.min(run, (System.nanoTime() - start) / (double)px.length);
+      }
+      System.out.println(String.format(
+        "%-8s dist %.2f ns/pixel, run %.2f ns/pixel (%d)",
+        m.name().toLowerCase(), dist, run, sink & 0xF
+      ));
+    }
+  }
+
+  /**
+   * pixels()
+   *
+   * Generate pixels that wander in colour, so that runs of similar colour
+   * form as they do in photographs.
+   *
+   * @param rand The source of randomness.
+   * @return The pixels.
+   **/
+  private static int[] pixels(Random rand){
+    int[] px = new int[PIXELS];
+    int r = 128;
+    int g = 128;
+    int b = 128;
+    for(int i = 0; i < px.length; i++){
+      r = Math.max(0, Math.min(255, r + rand.nextInt(9) - 4));
+      g = Math.max(0, Math.min(255, g + rand.nextInt(9) - 4));
+      b = Math.max(0, Math.min(255, b + rand.nextInt(9) - 4));
+      px[i] = (r << 16) | (g << 8) | b;
+    }
+    return px;
+  }
+}
@@ -0,0 +1,68 @@
+package b.img;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache.java
+ *
+ * A least recently used cache of encoded previews, bounded by the total
+ * number of bytes held rather than the number of entries.
+ **/
+public class Cache{
+  private LinkedHashMap<String, byte[]> entries;
+  private long maxBytes;
+  private long bytes;
+
+  /**
+   * Cache()
+   *
+   * Create a new empty cache.
+   *
+   * @param maxBytes The maximum number of bytes to be held.
+   **/
+  public Cache(long maxBytes){
+    entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    this.maxBytes = maxBytes;
+    bytes = 0;
+  }
+
+  /**
+   * get()
+   *
+   * Get an entry, marking it as recently used.
+   *
+   * @param key The key of the entry.
+   * @return The entry, otherwise NULL if not cached.
+   **/
+  public synchronized byte[] get(String key){
+    return entries.get(key);
+  }
+
+  /**
+   * put()
+   *
+   * Add an entry, evicting the least recently used entries until it fits.
+   * Entries larger than the whole cache are not stored.
+   *
+   * @param key The key of the entry.
+   * @param data The data to be cached.
+   **/
+  public synchronized void put(String key, byte[] data){
+    if(data.length > maxBytes){
+      return;
+    }
+    byte[] prev = entries.put(key, data);
+    if(prev != null){
+      bytes -= prev.length;
+    }
+    bytes += data.length;
+    Iterator<Map.Entry<String, byte[]>> it = entries.entrySet().iterator();
+    while(bytes > maxBytes && it.hasNext()){
+      Map.Entry<String, byte[]> e = it.next();
+      bytes -= e.getValue().length;
+      it.remove();
+    }
+  }
+}
@@ -1,7 +1,18 @@
 package b.img;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Convert.java
@@ -9,25 +20,36 @@ import java.util.ArrayList;
  * Program for handling the batch conversion process.
  **/
 public class Convert implements Runnable{
+  private static final String[] STAGES = {"decode", "scale", "encode"};
+  private static final int DECODE = 0;
+  private static final int SCALE = 1;
+  private static final int ENCODE = 2;
+
   /**
    * FORMAT
    *
    * The different types of images that we may need to handle.
    **/
   public enum FORMAT{
-    PNG("png"),
-    JPEG("jpg"),
-    SVG("svg");
+    PNG("png", "image/png"),
+    JPEG("jpg", "image/jpeg"),
+    SVG("svg", "image/svg+xml");
 
     private final String type;
+    private final String mime;
 
-    FORMAT(String type){
+    FORMAT(String type, String mime){
       this.type = type;
+      this.mime = mime;
     }
 
     String getType(){
       return type;
     }
+
+    String getMime(){
+      return mime;
+    }
   }
 
   /**
@@ -50,16 +72,75 @@ public class Convert implements Runnable{
     SLOW;
   }
 
-  private Convert.FORMAT format;
-  private int startedTasks;
-  private int totalTasks;
-  private ArrayList<File> input;
+  /**
+   * Convert.Job.java
+   *
+   * The state of a single input as it passes through the pipeline.
+   **/
+  private static class Job{
+    private File in;
+    private int index;
+    private Process proc;
+    private String sig;
+    private String hash;
+    /* Whether any target was left to an identical input */
+    private boolean duplicate;
+    private long bytes;
+    private long[] nanos = new long[STAGES.length];
+    private ArrayList<Target> targets = new ArrayList<Target>();
+    private ArrayList<String> keys = new ArrayList<String>();
+    /* An earlier output each target makes obsolete, otherwise NULL */
+    private ArrayList<File> stale = new ArrayList<File>();
+    private ArrayList<CompletableFuture<File>> shared =
+      new ArrayList<CompletableFuture<File>>();
+
+    /**
+     * Job()
+     *
+     * Create a new job for an input.
+     *
+     * @param in The input file.
+     * @param index The index of this input, starting at one.
+     **/
+    public Job(File in, int index){
+      this.in = in;
+      this.index = index;
+    }
+  }
+
+  private Convert.FORMAT[] format;
+  private volatile int startedTasks;
+  private AtomicInteger completedTasks;
+  private AtomicInteger skippedTasks;
+  private AtomicInteger duplicateTasks;
+  private volatile boolean complete;
+  private Inputs input;
+  private Manifest manifest;
+  private ConcurrentHashMap<String, CompletableFuture<File>> dedup;
+  private com.sun.management.ThreadMXBean stats;
+  private AtomicLong statsBytes;
+  private AtomicLongArray statsNanos;
+  private AtomicInteger statsImages;
+  private AtomicInteger statsNormalized;
   private int jobs;
+  private int decodeJobs;
+  private int encodeJobs;
+  private Stage decoders;
+  private Stage scalers;
+  private Stage encoders;
+  /* Shared by every image for resampling split across threads */
+  private ForkJoinPool strips;
+  /* One permit for each scaling thread, lent or in use */
+  private Semaphore cores;
   private Convert.METHOD method;
   private String output;
   private Convert.SPEED speed;
-  private int scaleWidth;
-  private int scaleHeight;
+  private Resample.FILTER filter;
+  private boolean stream;
+  private int colours;
+  private Distance.METRIC metric = Distance.METRIC.RGB;
+  private long maxBytes;
+  private int[][] scales;
   private boolean ready;
 
   /**
@@ -67,49 +148,183 @@ public class Convert implements Runnable{
    *
    * Setup the conversion process and search for the specified files.
    *
-   * @param format The desired output format.
-   * @param input An array of input images.
+   * @param format The desired output formats.
+   * @param input An array of input images and directories.
+   * @param globs Patterns that files found in directories must match.
    * @param jobs The number of jobs to use in processing the images.
    * @param method The algorithm to use when processing the images.
    * @param output The output string format.
    * @param speed The desired speed to run the algorithm (if applicable).
-   * @param scaledWidth The desired output width.
-   * @param scaledHeight The desired output height.
+   * @param scales The desired output sizes, each being a width and height.
    **/
   public Convert(
-    FORMAT format,
+    FORMAT[] format,
     String[] input,
+    String[] globs,
     int jobs,
     METHOD method,
     String output,
     SPEED speed,
-    int scaleWidth,
-    int scaleHeight
+    int[][] scales
   ){
     ready = false;
     /* Store parameters */
     this.format = format;
     this.jobs = jobs;
+    this.decodeJobs = jobs;
+    this.encodeJobs = jobs;
     this.method = method;
     this.output = output;
     this.speed = speed;
-    this.scaleWidth = scaleWidth;
-    this.scaleHeight = scaleHeight;
+    this.scales = scales;
     /* Check for files and store */
     startedTasks = 0;
-    totalTasks = input.length;
-    this.input = new ArrayList<File>();
+    completedTasks = new AtomicInteger(0);
+    skippedTasks = new AtomicInteger(0);
+    duplicateTasks = new AtomicInteger(0);
+    complete = false;
+    manifest = null;
+    dedup = null;
     for(int x = 0; x < input.length; x++){
-      File file = new File(input[x]);
-      if(file.exists() || !file.isDirectory()){
-        this.input.add(file);
-      }else{
+      /* Lists are checked, standard input is assumed to exist */
+      String path = input[x].startsWith("@") ? input[x].substring(1) : input[x];
+      if(!input[x].equals("-") && !(new File(path)).exists()){
         return;
       }
     }
+    this.input = new Inputs(input, globs);
     ready = true;
   }
 
+  /**
+   * setDecodeJobs()
+   *
+   * Set the number of threads used to decode input images.
+   *
+   * @param decodeJobs The number of decode threads.
+   **/
+  public void setDecodeJobs(int decodeJobs){
+    this.decodeJobs = decodeJobs;
+  }
+
+  /**
+   * setEncodeJobs()
+   *
+   * Set the number of threads used to encode and write output images.
+   *
+   * @param encodeJobs The number of encode threads.
+   **/
+  public void setEncodeJobs(int encodeJobs){
+    this.encodeJobs = encodeJobs;
+  }
+
+  /**
+   * setFilter()
+   *
+   * Set the resampling filter, overriding the default for the speed.
+   *
+   * @param filter The filter to be used, otherwise NULL for the default.
+   **/
+  public void setFilter(Resample.FILTER filter){
+    this.filter = filter;
+  }
+
+  /**
+   * setStream()
+   *
+   * Decode every input a band of rows at a time, rather than only those
+   * too large to hold in memory.
+   **/
+  public void setStream(){
+    stream = true;
+  }
+
+  /**
+   * setPalette()
+   *
+   * Fill SVG elements from a palette chosen for each image.
+   *
+   * @param colours The maximum number of colours, otherwise zero for none.
+   **/
+  public void setPalette(int colours){
+    this.colours = colours;
+  }
+
+  /**
+   * setMetric()
+   *
+   * Set how the distance between colours is measured for SVG output.
+   *
+   * @param metric The colour distance measure.
+   **/
+  public void setMetric(Distance.METRIC metric){
+    this.metric = metric;
+  }
+
+  /**
+   * setMaxBytes()
+   *
+   * Keep each output within a number of bytes.
+   *
+   * @param bytes The maximum bytes per output, otherwise zero for no limit.
+   **/
+  public void setMaxBytes(long bytes){
+    this.maxBytes = bytes;
+  }
+
+  /**
+   * setIncremental()
+   *
+   * Only convert inputs that have changed since they were last converted
+   * with the same parameters, as recorded in a manifest.
+   *
+   * @param file The manifest file.
+   * @param hash True if input content should be hashed to detect changes,
+   * rather than relying on the size and modification time alone.
+   **/
+  public void setIncremental(File file, boolean hash){
+    try{
+      manifest = new Manifest(file, hash);
+    }catch(IOException e){
+      System.err.println("(internal) Unable to open manifest '" + file + "'.");
+      ready = false;
+    }
+  }
+
+  /**
+   * setDedup()
+   *
+   * Convert inputs with identical content only once, the outputs for the
+   * duplicates are then linked or copied from the first.
+   **/
+  public void setDedup(){
+    dedup = new ConcurrentHashMap<String, CompletableFuture<File>>();
+  }
+
+  /**
+   * setStats()
+   *
+   * Report the time spent and number of bytes allocated in each stage of
+   * the pipeline for each image, along with how many inputs had to be
+   * normalized after decoding.
+   **/
+  public void setStats(){
+    java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+    if(
+      mx instanceof com.sun.management.ThreadMXBean &&
+      ((com.sun.management.ThreadMXBean)mx).isThreadAllocatedMemorySupported()
+    ){
+      stats = (com.sun.management.ThreadMXBean)mx;
+      stats.setThreadAllocatedMemoryEnabled(true);
+      statsBytes = new AtomicLong(0);
+      statsNanos = new AtomicLongArray(STAGES.length);
+      statsImages = new AtomicInteger(0);
+      statsNormalized = new AtomicInteger(0);
+    }else{
+      System.err.println("(internal) Allocation statistics not supported.");
+    }
+  }
+
   /**
    * isReady()
    *
@@ -133,82 +348,466 @@ public class Convert implements Runnable{
   /**
    * run()
    *
-   * The conversion handling thread.
+   * The conversion handling thread. Each job is passed through the decode,
+   * scale and encode stages in turn, with each stage running on its own
+   * threads so that the stages overlap.
    **/
   @Override
   public void run(){
-    ArrayList<Thread> activeJobs = new ArrayList<Thread>();
-    ArrayList<Process> activeProcs = new ArrayList<Process>();
-    /* Loop until there is no more images waiting to be assigned */
-    while(input.size() > 0){
-      /* Create threads if possible */
-      while(activeJobs.size() < jobs && input.size() > 0){
-        File in = input.get(0);
-        /* Find the process */
-        Process proc = null;
-        switch(method){
-          case SCALE :
-            proc = new ProcessScale();
-            break;
-        }
-        /* Generate output */
-        String filename = in.getName();
-        String out = output
-          .replace("%f", filename)
-          .replace("%i", new Integer(++startedTasks).toString())
-          .replace("%t", new Long(System.currentTimeMillis()).toString());
-        out += "." + format.getType();
-        /* Load data into process */
-        proc.setFormat(format);
-        proc.setInput(in);
-        proc.setOutput(new File(out));
-        proc.setSpeed(speed);
-        proc.setWidth(scaleWidth);
-        proc.setHeight(scaleHeight);
-        /* Start process */
-        Thread thread = new Thread((Runnable)proc);
-        activeJobs.add(thread);
-        activeProcs.add(proc);
-        thread.start();
-        /* Get rid of input data */
-        input.remove(in);
+    decoders = new Stage("decode", decodeJobs, decodeJobs);
+    scalers = new Stage("scale", jobs, jobs);
+    encoders = new Stage("encode", encodeJobs, encodeJobs);
+    strips = new ForkJoinPool(jobs);
+    cores = new Semaphore(jobs);
+    try{
+      /* Queue up the images as they are found, blocking when the pipeline
+         is full so that only a bounded number are in flight at once */
+      while(input.hasNext()){
+        Job job = new Job(input.next(), startedTasks + 1);
+        ++startedTasks;
+        decoders.submit(() -> decode(job));
       }
-      /* Service threads */
-      for(int x = 0; x < activeJobs.size(); x++){
-        if(activeProcs.get(x).isComplete()){
+      input = null;
+      /* Wait here until all jobs are done */
+      synchronized(completedTasks){
+        while(completedTasks.get() < startedTasks){
           try{
-            activeJobs.get(x).join();
+            completedTasks.wait();
           }catch(InterruptedException e){
             /* Do nothing */
           }
-          activeJobs.remove(x);
-          activeProcs.remove(x);
-          /* Start processing another */
-          break;
         }
       }
+    }catch(RuntimeException e){
+      System.err.println("(internal) Unable to queue inputs: " + e);
+    }finally{
+      /* Even on failure, let the jobs already queued finish and record */
+      decoders.shutdown();
+      scalers.shutdown();
+      encoders.shutdown();
+      strips.shutdown();
+      if(manifest != null){
+        manifest.close();
+      }
+      if(stats != null && statsImages.get() > 0){
+        int n = statsImages.get();
+        long[] nanos = new long[STAGES.length];
+        for(int x = 0; x < nanos.length; x++){
+          nanos[x] = statsNanos.get(x) / n;
+        }
+        System.out.println(
+          "Stats: per image " + describe(statsBytes.get() / n, nanos) +
+          " (" + n + " images, " + statsNormalized.get() + " normalized)"
+        );
+      }
+      complete = true;
     }
-    /* Wait here until the final jobs are done */
-    while(activeJobs.size() > 0){
+  }
+
+  /**
+   * prepare()
+   *
+   * Create the process for a job and work out the outputs it needs to
+   * generate.
+   *
+   * @param job The job to be prepared.
+   * @return True if there is anything to be generated, otherwise false.
+   **/
+  private boolean prepare(Job job){
+    /* Find the process */
+    switch(method){
+      case SCALE :
+        job.proc = new ProcessScale();
+        break;
+    }
+    /* Generate output */
+    String filename = job.in.getName();
+    String name = output;
+    if(scales.length > 1 && !name.contains("%s")){
+      name += "-%s";
+    }
+    name = name
+      .replace("%f", filename)
+      .replace("%i", Integer.toString(job.index))
+      .replace("%t", Long.toString(System.currentTimeMillis()));
+    if(dedup != null){
+      job.hash = Manifest.hash(job.in);
+    }
+    if(manifest != null){
+      job.sig = manifest.signature(job.in, job.hash);
+    }
+    /* Load data into process */
+    job.proc.setInput(job.in);
+    job.proc.setSpeed(speed);
+    job.proc.setFilter(filter);
+    /* Inputs decoding or waiting on, and running in, the scale stage */
+    job.proc.setInFlight(decodeJobs + jobs * 2);
+    job.proc.setStream(stream);
+    job.proc.setPalette(colours);
+    job.proc.setMetric(metric);
+    job.proc.setMaxBytes(maxBytes);
+    for(int[] scale : scales){
+      String out = name.replace("%s", scale[0] + "x" + scale[1]);
+      for(FORMAT f : format){
+        Target t = new Target(f, scale[0], scale[1], new File(out + "." + f.getType()));
+        String key = null;
+        File old = null;
+        if(manifest != null && job.sig != null){
+          key = Manifest.key(job.in.getAbsolutePath(), settings(), t);
+          /* Skip outputs that are already up to date */
+          if(manifest.isCurrent(key, job.sig)){
+            continue;
+          }
+          /* The output from an older version of the input goes once the new
+             one is written, as does one written before with other settings */
+          old = manifest.getOutput(key);
+          if(old != null && old.equals(t.getOutput().getAbsoluteFile())){
+            old = null;
+          }
+          if(t.getOutput().exists() && manifest.isOutput(t.getOutput())){
+            t.setReplace();
+          }
+        }
+        CompletableFuture<File> done = null;
+        if(job.hash != null){
+          /* Only the first job with this content and target generates it */
+          done = new CompletableFuture<File>();
+          CompletableFuture<File> first = dedup.putIfAbsent(
+            Manifest.key(job.hash, settings(), t),
+            done
+          );
+          if(first != null){
+            String k = key;
+            String sig = job.sig;
+            File stale = old;
+            first.thenAccept(src -> duplicate(src, t, stale, k, sig));
+            job.duplicate = true;
+            continue;
+          }
+        }
+        job.targets.add(t);
+        job.keys.add(key);
+        job.stale.add(old);
+        job.shared.add(done);
+        job.proc.addTarget(t);
+      }
+    }
+    return job.targets.size() > 0;
+  }
+
+  /**
+   * settings()
+   *
+   * Join together every setting that changes the bytes of an output, so
+   * that outputs made with different settings are never mistaken for each
+   * other.
+   *
+   * @return The settings.
+   **/
+  private String settings(){
+    return method + "|" + speed + "|" +
+      (filter != null ? filter : "DEFAULT") + "|" +
+      colours + "|" + metric + "|" + maxBytes;
+  }
+
+  /**
+   * duplicate()
+   *
+   * Produce an output from an identical one generated for another input, as
+   * a hard link where possible or otherwise as a copy.
+   *
+   * @param src The generated output, otherwise NULL if it failed.
+   * @param t The target to be produced.
+   * @param stale An earlier output made obsolete by this one, otherwise
+   * NULL.
+   * @param key The manifest key for the output, otherwise NULL.
+   * @param sig The signature of the input for the manifest.
+   **/
+  private void duplicate(File src, Target t, File stale, String key, String sig){
+    File out = t.getOutput();
+    if(src == null){
+      System.err.println("(internal) Unable to produce duplicate '" + out + "'.");
+      return;
+    }
+    /* Keep any output being replaced until the new one is whole */
+    File dst = t.isReplace() ? new File(out.getPath() + ".tmp") : out;
+    try{
       try{
-        activeJobs.get(0).join();
-      }catch(InterruptedException e){
-        /* Do nothing */
+        try{
+          Files.createLink(dst.toPath(), src.toPath());
+        }catch(IOException | UnsupportedOperationException e){
+          Files.copy(src.toPath(), dst.toPath());
+        }
+        if(dst != out){
+          Files.move(
+            dst.toPath(),
+            out.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE
+          );
+        }
+      }finally{
+        if(dst != out){
+          dst.delete();
+        }
+      }
+      if(key != null){
+        manifest.record(key, sig, out);
+      }
+      if(stale != null){
+        stale.delete();
+      }
+    }catch(IOException e){
+      System.err.println("(internal) Unable to produce duplicate '" + out + "'.");
+    }
+  }
+
+  /**
+   * decode()
+   *
+   * Decode stage of the pipeline, passes the job on to be scaled.
+   *
+   * @param job The job to be decoded.
+   **/
+  private void decode(Job job){
+    long start = System.nanoTime();
+    long mark = allocated();
+    boolean ok = false;
+    try{
+      if(!prepare(job)){
+        if(job.duplicate){
+          duplicateTasks.incrementAndGet();
+        }else{
+          skippedTasks.incrementAndGet();
+        }
+      }else if(job.proc.isReady() && job.proc.load()){
+        ok = true;
+      }else{
+        System.err.println("(internal) Unable to process '" + job.in + "'.");
       }
-      activeJobs.remove(0);
-      activeProcs.remove(0);
+    }catch(RuntimeException e){
+      System.err.println("(internal) Decode failed for '" + job.in + "': " + e);
+    }
+    account(job, DECODE, start, mark);
+    if(ok){
+      scalers.submit(() -> scale(job));
+    }else{
+      finish(job, false);
+    }
+  }
+
+  /**
+   * scale()
+   *
+   * Scale stage of the pipeline, passes the job on to be encoded.
+   *
+   * @param job The job to be converted.
+   **/
+  private void scale(Job job){
+    long start = System.nanoTime();
+    long mark = allocated();
+    boolean ok = false;
+    /* Lend any scaling threads without work to this image, holding them
+       so that no other image can start on them until it is done */
+    cores.acquireUninterruptibly();
+    int lent = scalers.getIdle();
+    while(lent > 0 && !cores.tryAcquire(lent)){
+      --lent;
+    }
+    try{
+      job.proc.setStrips(strips, 1 + lent);
+      job.proc.convert();
+      ok = true;
+    }catch(RuntimeException e){
+      System.err.println("(internal) Conversion failed for '" + job.in + "': " + e);
+    }finally{
+      cores.release(1 + lent);
+    }
+    account(job, SCALE, start, mark);
+    if(ok){
+      encoders.submit(() -> encode(job));
+    }else{
+      finish(job, false);
+    }
+  }
+
+  /**
+   * encode()
+   *
+   * Encode stage of the pipeline, the job is complete after this.
+   *
+   * @param job The job to be saved.
+   **/
+  private void encode(Job job){
+    long start = System.nanoTime();
+    long mark = allocated();
+    boolean ok = false;
+    try{
+      ok = job.proc.save();
+      if(ok){
+        for(int x = 0; x < job.keys.size(); x++){
+          if(job.keys.get(x) != null){
+            manifest.record(job.keys.get(x), job.sig, job.targets.get(x).getOutput());
+          }
+          if(job.stale.get(x) != null){
+            job.stale.get(x).delete();
+          }
+        }
+      }
+    }catch(RuntimeException e){
+      System.err.println("(internal) Save failed for '" + job.in + "': " + e);
+    }
+    account(job, ENCODE, start, mark);
+    if(ok && stats != null){
+      statsBytes.addAndGet(job.bytes);
+      for(int x = 0; x < STAGES.length; x++){
+        statsNanos.addAndGet(x, job.nanos[x]);
+      }
+      statsImages.incrementAndGet();
+      if(job.proc.isNormalized()){
+        statsNormalized.incrementAndGet();
+      }
+      System.out.println(
+        "Stats: '" + job.in + "' " + describe(job.bytes, job.nanos) +
+        (job.proc.isNormalized() ? ", normalized" : "")
+      );
+    }
+    finish(job, ok);
+  }
+
+  /**
+   * account()
+   *
+   * Add the time spent and bytes allocated by a stage to a job.
+   *
+   * @param job The job the stage worked on.
+   * @param stage The index of the stage.
+   * @param start The time at which the stage started.
+   * @param mark The bytes allocated by the thread when the stage started.
+   **/
+  private void account(Job job, int stage, long start, long mark){
+    job.nanos[stage] += System.nanoTime() - start;
+    job.bytes += allocated() - mark;
+  }
+
+  /**
+   * describe()
+   *
+   * Describe the statistics of a conversion.
+   *
+   * @param bytes The bytes allocated.
+   * @param nanos The time spent in each stage.
+   * @return The description.
+   **/
+  private static String describe(long bytes, long[] nanos){
+    String s = bytes + " bytes allocated";
+    for(int x = 0; x < STAGES.length; x++){
+      s += ", " + STAGES[x] + " " + (nanos[x] / 1000000) + " ms";
+    }
+    return s;
+  }
+
+  /**
+   * allocated()
+   *
+   * Get the number of bytes allocated so far by the calling thread.
+   *
+   * @return The bytes allocated, otherwise zero if statistics are off.
+   **/
+  private long allocated(){
+    return stats != null ? stats.getCurrentThreadAllocatedBytes() : 0;
+  }
+
+  /**
+   * finish()
+   *
+   * Mark a job as having left the pipeline, passing its outputs on to any
+   * duplicates waiting for them.
+   *
+   * @param job The job that finished.
+   * @param ok True if the outputs were all written, otherwise false.
+   **/
+  private void finish(Job job, boolean ok){
+    for(int x = 0; x < job.shared.size(); x++){
+      if(job.shared.get(x) != null){
+        job.shared.get(x).complete(ok ? job.targets.get(x).getOutput() : null);
+      }
+    }
+    synchronized(completedTasks){
+      completedTasks.incrementAndGet();
+      completedTasks.notifyAll();
     }
   }
 
   /**
    * progress()
    *
-   * Return the progress of the currently running conversion.
+   * Return the progress of the currently running conversion. As inputs are
+   * found whilst converting, this is relative to the inputs found so far.
    *
    * @return Progress of current conversion, 0.0 indicates zero progress and
    * 1.0 indicates completion.
    **/
   public float progress(){
-    return (float)(((double)totalTasks - (double)input.size()) / (double)totalTasks);
+    int started = startedTasks;
+    if(started <= 0){
+      return complete ? 1.0f : 0.0f;
+    }
+    return (float)((double)completedTasks.get() / (double)started);
+  }
+
+  /**
+   * getStarted()
+   *
+   * Get the number of inputs found so far.
+   *
+   * @return The number of inputs queued for conversion.
+   **/
+  public int getStarted(){
+    return startedTasks;
+  }
+
+  /**
+   * getCompleted()
+   *
+   * Get the number of inputs that have finished conversion.
+   *
+   * @return The number of inputs that left the pipeline.
+   **/
+  public int getCompleted(){
+    return completedTasks.get();
+  }
+
+  /**
+   * getDuplicates()
+   *
+   * Get the number of inputs that were copies of an earlier input.
+   *
+   * @return The number of inputs deduplicated.
+   **/
+  public int getDuplicates(){
+    return duplicateTasks.get();
+  }
+
+  /**
+   * getSkipped()
+   *
+   * Get the number of inputs that were already up to date.
+   *
+   * @return The number of inputs skipped.
+   **/
+  public int getSkipped(){
+    return skippedTasks.get();
+  }
+
+  /**
+   * isComplete()
+   *
+   * Check whether all of the inputs have been found and converted.
+   *
+   * @return True if the conversion is complete, otherwise false.
+   **/
+  public boolean isComplete(){
+    return complete;
   }
 }
@@ -0,0 +1,146 @@
+package b.img;
+
+/**
+ * Distance.java
+ *
+ * Measures of how far apart two colours are, for growing runs and regions
+ * of similar colour. Each works in integers and gives a squared distance,
+ * compared against a squared limit worked out once from a threshold, so no
+ * square root is ever taken.
+ *
+ * Thresholds are given in plain RGB units, and each measure scales its
+ * limit so that a threshold means about the same on every measure.
+ **/
+public class Distance{
+  /* Linear light of each sRGB level, out of 4095 */
+  private static final int[] LIN = new int[256];
+  /* The CIELAB function f() of linear light out of 4095, scaled by 1024 */
+  private static final int[] F = new int[4096];
+
+  static{
+    for(int x = 0; x < LIN.length; x++){
+      double c = x / 255.0;
+      c = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+      LIN[x] = (int)Math.round(c * 4095);
+    }
+    for(int x = 0; x < F.length; x++){
+      double t = x / 4095.0;
+      t = t > 216.0 / 24389.0 ? Math.cbrt(t) : (24389.0 / 27.0 * t + 16.0) / 116.0;
+      F[x] = (int)Math.round(t * 1024);
+    }
+  }
+
+  /**
+   * METRIC
+   *
+   * The available measures of colour distance.
+   **/
+  public enum METRIC{
+    RGB{
+      @Override
+      public int dist(int i, int j){
+        int dr = ((i >> 16) & 0xFF) - ((j >> 16) & 0xFF);
+        int dg = ((i >>  8) & 0xFF) - ((j >>  8) & 0xFF);
+        int db = ((i      ) & 0xFF) - ((j      ) & 0xFF);
+        return dr * dr + dg * dg + db * db;
+      }
+
+      @Override
+      public int limit(int thresh){
+        return thresh * thresh;
+      }
+
+      @Override
+      public int run(int[] px, int from, int to, int c, int limit){
+        return Kernels.get().run(px, from, to, c, limit);
+      }
+    },
+    WEIGHTED{
+      /* Green counts most and blue least, as they do to the eye */
+      @Override
+      public int dist(int i, int j){
+        int dr = ((i >> 16) & 0xFF) - ((j >> 16) & 0xFF);
+        int dg = ((i >>  8) & 0xFF) - ((j >>  8) & 0xFF);
+        int db = ((i      ) & 0xFF) - ((j      ) & 0xFF);
+        return 2 * dr * dr + 4 * dg * dg + 3 * db * db;
+      }
+
+      @Override
+      public int limit(int thresh){
+        return 3 * thresh * thresh;
+      }
+    },
+    LAB{
+      /* Approximate CIELAB in eighths of a unit, through tables */
+      @Override
+      public int dist(int i, int j){
+        int ri = LIN[(i >> 16) & 0xFF];
+        int gi = LIN[(i >>  8) & 0xFF];
+        int bi = LIN[(i      ) & 0xFF];
+        int rj = LIN[(j >> 16) & 0xFF];
+        int gj = LIN[(j >>  8) & 0xFF];
+        int bj = LIN[(j      ) & 0xFF];
+        /* XYZ relative to the D65 white, out of 4095 */
+        int xi = F[(1777 * ri + 1541 * gi +  778 * bi) >> 12];
+        int yi = F[( 871 * ri + 2929 * gi +  296 * bi) >> 12];
+        int zi = F[(  73 * ri +  448 * gi + 3575 * bi) >> 12];
+        int xj = F[(1777 * rj + 1541 * gj +  778 * bj) >> 12];
+        int yj = F[( 871 * rj + 2929 * gj +  296 * bj) >> 12];
+        int zj = F[(  73 * rj +  448 * gj + 3575 * bj) >> 12];
+        int dl = (116 * (yi - yj)) >> 7;
+        int da = (500 * ((xi - yi) - (xj - yj))) >> 7;
+        int db = (200 * ((yi - zi) - (yj - zj))) >> 7;
+        return dl * dl + da * da + db * db;
+      }
+
+      /* Neighbouring pixels in photographs differ by about 0.23 CIELAB units
+       per RGB unit, so a threshold keeps its meaning on them */
+      @Override
+      public int limit(int thresh){
+        return thresh * thresh * 339 / 100;
+      }
+    };
+
+    /**
+     * dist()
+     *
+     * Calculate the squared distance between two colours.
+     *
+     * @param i The first colour, the top byte being ignored.
+     * @param j The second colour, the top byte being ignored.
+     * @return The squared distance, in this measure's own units.
+     **/
+    public abstract int dist(int i, int j);
+
+    /**
+     * limit()
+     *
+     * Convert a threshold to the squared distance to compare against.
+     *
+     * @param thresh The threshold in RGB units.
+     * @return The squared limit, in this measure's own units.
+     **/
+    public abstract int limit(int thresh);
+
+    /**
+     * run()
+     *
+     * Find the end of a run of pixels close in colour to a given colour.
+     *
+     * @param px The pixels.
+     * @param from The first pixel to be checked.
+     * @param to The pixel after the last to be checked.
+     * @param c The colour to compare against.
+     * @param limit The squared distance at which a pixel ends the run.
+     * @return The first pixel not in the run, otherwise the end.
+     **/
+    public int run(int[] px, int from, int to, int c, int limit){
+      for(int i = from; i < to; i++){
+        if(dist(px[i], c) >= limit){
+          return i;
+        }
+      }
+      return to;
+    }
+  }
+}
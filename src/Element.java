@@ -7,6 +7,7 @@ package b.img;
  **/
 public abstract class Element{
   private String style;
+  private String className;
 
   /**
    * addStyle()
@@ -42,6 +43,48 @@ public abstract class Element{
     return style;
   }
 
+  /**
+   * setClassName()
+   *
+   * Set the class of the element, for styles shared between elements.
+   *
+   * @param className The class name, otherwise NULL for none.
+   * @return A reference to this element.
+   **/
+  public Element setClassName(String className){
+    this.className = className;
+    return this;
+  }
+
+  /**
+   * getClassName()
+   *
+   * Get the class of the element.
+   *
+   * @return The class name, otherwise NULL.
+   **/
+  public String getClassName(){
+    return className;
+  }
+
+  /**
+   * attributes()
+   *
+   * Create the class and style attributes common to every element.
+   *
+   * @return The attributes, each with a leading space, otherwise empty.
+   **/
+  protected String attributes(){
+    String add = "";
+    if(className != null){
+      add += " class=\"" + className + "\"";
+    }
+    if(style != null && style.length() > 0){
+      add += " style=\"" + style + "\"";
+    }
+    return add;
+  }
+
   /**
    * toString()
    *
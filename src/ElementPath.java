@@ -0,0 +1,65 @@
+package b.img;
+
+/**
+ * ElementPath.java
+ *
+ * Abstraction of an SVG path made of closed orthogonal outlines, each
+ * written as a move followed by alternating horizontal and vertical lines.
+ **/
+public class ElementPath extends Element{
+  /* Packed corners, x then y for each point */
+  private int[] xy;
+  /* The number of coordinates up to the end of each outline */
+  private int[] ends;
+
+  /**
+   * ElementPath()
+   *
+   * Construct minimum path. Each corner must share an x or y coordinate with
+   * the one before it.
+   *
+   * @param xy The corners of every outline, x then y for each point.
+   * @param ends The number of coordinates up to the end of each outline.
+   **/
+  public ElementPath(IntList xy, IntList ends){
+    this.xy = xy.toArray();
+    this.ends = ends.toArray();
+  }
+
+  /**
+   * ElementPath()
+   *
+   * Construct styled path. Each corner must share an x or y coordinate
+   * with the one before it.
+   *
+   * @param xy The corners of every outline, x then y for each point.
+   * @param ends The number of coordinates up to the end of each outline.
+   * @param s A style to be assigned.
+   **/
+  public ElementPath(IntList xy, IntList ends, String s){
+    this.xy = xy.toArray();
+    this.ends = ends.toArray();
+    addStyle(s);
+  }
+
+  @Override
+  public String toString(){
+    StringBuilder d = new StringBuilder(xy.length * 3);
+    int i = 0;
+    for(int e = 0; e < ends.length; e++){
+      d.append('M').append(xy[i]).append(' ').append(xy[i + 1]);
+      for(i += 2; i < ends[e]; i += 2){
+        if(xy[i + 1] == xy[i - 1]){
+          d.append('H').append(xy[i]);
+        }else{
+          d.append('V').append(xy[i + 1]);
+        }
+      }
+      d.append('Z');
+    }
+    return "<path" +
+      " d=\"" + d + "\"" +
+      attributes() +
+    "/>";
+  }
+}
@@ -49,16 +49,12 @@ public class ElementRect extends Element{
 
   @Override
   public String toString(){
-    String add = "";
-    if(getStyle() != null && getStyle().length() > 0){
-      add += " style=\"" + getStyle() + "\"";
-    }
     return "<rect" +
       " x=\""      + Element.numToString(x) + "\"" +
       " y=\""      + Element.numToString(y) + "\"" +
       " width=\""  + Element.numToString(w) + "\"" +
       " height=\"" + Element.numToString(h) + "\"" +
-      add +
+      attributes() +
     "/>";
   }
 }
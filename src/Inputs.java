@@ -0,0 +1,228 @@
+package b.img;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.imageio.ImageIO;
+
+/**
+ * Inputs.java
+ *
+ * Lazily produce the input files from the paths given on the command line.
+ * Directories are walked recursively one entry at a time, so only the
+ * directories currently being walked are held in memory, no matter how many
+ * files they contain.
+ *
+ * A path of "-" reads a list of paths from standard input, and a path of
+ * "@file" reads a list of paths from the file. Lists may be newline or NUL
+ * delimited (as from "find -print0") and are read as they are consumed, so
+ * conversion starts before the list is complete.
+ **/
+public class Inputs implements Iterator<File>{
+  private String[] paths;
+  private int next;
+  private ArrayDeque<DirectoryStream<Path>> dirs;
+  private ArrayDeque<Iterator<Path>> walk;
+  private Reader list;
+  private PathMatcher[] globs;
+  private HashSet<String> suffixes;
+  private File pending;
+
+  /**
+   * Inputs()
+   *
+   * Create a new lazy input walker.
+   *
+   * @param paths The files and directories to be walked.
+   * @param globs Patterns that files found in directories must match, for
+   * example "*.jpg". If none are given, any file with a suffix that can be
+   * decoded is accepted.
+   **/
+  public Inputs(String[] paths, String[] globs){
+    this.paths = paths;
+    next = 0;
+    dirs = new ArrayDeque<DirectoryStream<Path>>();
+    walk = new ArrayDeque<Iterator<Path>>();
+    list = null;
+    this.globs = new PathMatcher[globs.length];
+    for(int x = 0; x < globs.length; x++){
+      this.globs[x] = FileSystems.getDefault().getPathMatcher("glob:" + globs[x]);
+    }
+    suffixes = new HashSet<String>();
+    for(String s : ImageIO.getReaderFileSuffixes()){
+      suffixes.add(s.toLowerCase());
+    }
+    pending = null;
+  }
+
+  @Override
+  public boolean hasNext(){
+    if(pending == null){
+      pending = search();
+    }
+    return pending != null;
+  }
+
+  @Override
+  public File next(){
+    if(!hasNext()){
+      throw new NoSuchElementException();
+    }
+    File f = pending;
+    pending = null;
+    return f;
+  }
+
+  /**
+   * search()
+   *
+   * Find the next input file, descending into directories as they are
+   * found.
+   *
+   * @return The next file, otherwise NULL if there are no more.
+   **/
+  private File search(){
+    for(;;){
+      /* Continue walking the deepest directory */
+      if(walk.size() > 0){
+        Iterator<Path> it = walk.peek();
+        if(!it.hasNext()){
+          walk.pop();
+          try{
+            dirs.pop().close();
+          }catch(IOException e){
+            /* Do nothing */
+          }
+          continue;
+        }
+        Path p = it.next();
+        /* Links are not followed to avoid walking in circles */
+        if(Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)){
+          open(p);
+        }else if(accept(p)){
+          return p.toFile();
+        }
+        continue;
+      }
+      /* Continue reading the current list */
+      String path = null;
+      if(list != null){
+        path = readEntry();
+        /* Skip blank entries and the end of the list */
+        if(path == null || path.length() <= 0){
+          continue;
+        }
+      }else{
+        /* Move on to the next given path */
+        if(next >= paths.length){
+          return null;
+        }
+        path = paths[next++];
+        if(path.equals("-")){
+          list = new BufferedReader(new InputStreamReader(System.in));
+          continue;
+        }else if(path.startsWith("@")){
+          try{
+            list = new BufferedReader(new FileReader(path.substring(1)));
+          }catch(IOException e){
+            System.err.println("(internal) Unable to read list '" + path.substring(1) + "'.");
+          }
+          continue;
+        }
+      }
+      File f = new File(path);
+      if(f.isDirectory()){
+        open(f.toPath());
+      }else{
+        /* Files named explicitly are always used */
+        return f;
+      }
+    }
+  }
+
+  /**
+   * readEntry()
+   *
+   * Read the next entry from the current list, closing the list when it
+   * runs out.
+   *
+   * @return The next entry which may be empty, otherwise NULL if the list
+   * has ended.
+   **/
+  private String readEntry(){
+    StringBuilder sb = new StringBuilder();
+    try{
+      int c;
+      while((c = list.read()) >= 0){
+        if(c == '\n' || c == '\0'){
+          return sb.toString();
+        }else if(c != '\r'){
+          sb.append((char)c);
+        }
+      }
+    }catch(IOException e){
+      System.err.println("(internal) Unable to read list of inputs.");
+    }
+    /* End of the list */
+    try{
+      list.close();
+    }catch(IOException e){
+      /* Do nothing */
+    }
+    list = null;
+    return sb.length() > 0 ? sb.toString() : null;
+  }
+
+  /**
+   * open()
+   *
+   * Start walking a directory.
+   *
+   * @param dir The directory to be walked.
+   **/
+  private void open(Path dir){
+    try{
+      DirectoryStream<Path> ds = Files.newDirectoryStream(dir);
+      dirs.push(ds);
+      walk.push(ds.iterator());
+    }catch(IOException e){
+      System.err.println("(internal) Unable to read directory '" + dir + "'.");
+    }
+  }
+
+  /**
+   * accept()
+   *
+   * Check whether a file found in a directory should be used as an input.
+   *
+   * @param p The file to be checked.
+   * @return True if the file should be used, otherwise false.
+   **/
+  private boolean accept(Path p){
+    Path name = p.getFileName();
+    if(globs.length > 0){
+      for(PathMatcher m : globs){
+        if(m.matches(name)){
+          return true;
+        }
+      }
+      return false;
+    }
+    String n = name.toString();
+    int dot = n.lastIndexOf('.');
+    return dot >= 0 && suffixes.contains(n.substring(dot + 1).toLowerCase());
+  }
+}
@@ -0,0 +1,131 @@
+package b.img;
+
+import java.util.Arrays;
+
+/**
+ * IntList.java
+ *
+ * A growable list of primitive integers, for the places an ArrayList of
+ * Integer would box every value.
+ **/
+public class IntList{
+  private int[] data;
+  private int size;
+
+  /**
+   * IntList()
+   *
+   * Create an empty list.
+   **/
+  public IntList(){
+    this(16);
+  }
+
+  /**
+   * IntList()
+   *
+   * Create an empty list with room for a number of values.
+   *
+   * @param capacity The number of values to make room for.
+   **/
+  public IntList(int capacity){
+    data = new int[Math.max(capacity, 1)];
+    size = 0;
+  }
+
+  /**
+   * add()
+   *
+   * Append a value to the end of the list.
+   *
+   * @param v The value to be added.
+   **/
+  public void add(int v){
+    if(size == data.length){
+      data = Arrays.copyOf(data, data.length * 2);
+    }
+    data[size++] = v;
+  }
+
+  /**
+   * add()
+   *
+   * Append a pair of values to the end of the list, such as a coordinate.
+   *
+   * @param a The first value to be added.
+   * @param b The second value to be added.
+   **/
+  public void add(int a, int b){
+    if(size + 2 > data.length){
+      data = Arrays.copyOf(data, Math.max(data.length * 2, size + 2));
+    }
+    data[size++] = a;
+    data[size++] = b;
+  }
+
+  /**
+   * get()
+   *
+   * Get the value at an index.
+   *
+   * @param i The index of the value.
+   * @return The value.
+   **/
+  public int get(int i){
+    return data[i];
+  }
+
+  /**
+   * set()
+   *
+   * Replace the value at an index.
+   *
+   * @param i The index of the value.
+   * @param v The new value.
+   **/
+  public void set(int i, int v){
+    data[i] = v;
+  }
+
+  /**
+   * size()
+   *
+   * Get the number of values in the list.
+   *
+   * @return The number of values.
+   **/
+  public int size(){
+    return size;
+  }
+
+  /**
+   * truncate()
+   *
+   * Drop values from the end of the list.
+   *
+   * @param size The number of values to keep.
+   **/
+  public void truncate(int size){
+    this.size = Math.min(this.size, size);
+  }
+
+  /**
+   * clear()
+   *
+   * Empty the list, keeping its storage for reuse.
+   **/
+  public void clear(){
+    size = 0;
+  }
+
+  /**
+   * toArray()
+   *
+   * Copy the values out of the list.
+   *
+   * @return An array of exactly the values in the list.
+   **/
+  public int[] toArray(){
+    return Arrays.copyOf(data, size);
+  }
+}
@@ -0,0 +1,136 @@
+package b.img;
+
+import java.util.Arrays;
+
+/**
+ * IntSet.java
+ *
+ * A set of primitive integers held in a single open addressed table, for the
+ * places a HashSet of Integer would box every value. Zero marks a free slot
+ * in the table, so whether zero is in the set is kept separately.
+ **/
+public class IntSet{
+  private int[] keys;
+  private int size;
+  private boolean zero;
+
+  /**
+   * IntSet()
+   *
+   * Create an empty set.
+   **/
+  public IntSet(){
+    keys = new int[16];
+    size = 0;
+    zero = false;
+  }
+
+  /**
+   * add()
+   *
+   * Add a value to the set.
+   *
+   * @param v The value to be added.
+   * @return True if the value was added, false if it was already present.
+   **/
+  public boolean add(int v){
+    if(v == 0){
+      if(zero){
+        return false;
+      }
+      zero = true;
+      ++size;
+      return true;
+    }
+    int i = slot(keys, v);
+    if(keys[i] == v){
+      return false;
+    }
+    keys[i] = v;
+    ++size;
+    /* Keep the table at most half full */
+    if(size * 2 > keys.length){
+      grow();
+    }
+    return true;
+  }
+
+  /**
+   * contains()
+   *
+   * Check whether a value is in the set.
+   *
+   * @param v The value to be checked.
+   * @return True if the value is present, otherwise false.
+   **/
+  public boolean contains(int v){
+    return v == 0 ? zero : keys[slot(keys, v)] == v;
+  }
+
+  /**
+   * size()
+   *
+   * Get the number of values in the set.
+   *
+   * @return The number of values.
+   **/
+  public int size(){
+    return size;
+  }
+
+  /**
+   * toArray()
+   *
+   * Copy the values out of the set, in ascending order.
+   *
+   * @return An array of exactly the values in the set.
+   **/
+  public int[] toArray(){
+    int[] out = new int[size];
+    int n = 0;
+    if(zero){
+      out[n++] = 0;
+    }
+    for(int k : keys){
+      if(k != 0){
+        out[n++] = k;
+      }
+    }
+    Arrays.sort(out);
+    return out;
+  }
+
+  /**
+   * grow()
+   *
+   * Double the size of the table, placing every value again.
+   **/
+  private void grow(){
+    int[] next = new int[keys.length * 2];
+    for(int k : keys){
+      if(k != 0){
+        next[slot(next, k)] = k;
+      }
+    }
+    keys = next;
+  }
+
+  /**
+   * slot()
+   *
+   * Find the slot holding a value, otherwise the free slot it belongs in.
+   *
+   * @param table The table to be searched, a power of two in length.
+   * @param v The non-zero value to be found.
+   * @return The index of the slot.
+   **/
+  private static int slot(int[] table, int v){
+    int mask = table.length - 1;
+    int h = v * 0x9E3779B9;
+    int i = (h ^ (h >>> 16)) & mask;
+    while(table[i] != 0 && table[i] != v){
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+}
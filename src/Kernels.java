@@ -0,0 +1,189 @@
+package b.img;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Kernels.java
+ *
+ * The innermost pixel loops, with a plain scalar implementation here. Where
+ * the JDK's incubating Vector API is available (by running with
+ * "--add-modules jdk.incubator.vector") a vectorized implementation is
+ * loaded in its place, after checking that it gives exactly the same
+ * results as this one.
+ **/
+public class Kernels{
+  private static final String VECTOR_CLASS = "b.img.KernelsVector";
+  private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+  private static final Kernels ACTIVE = select();
+
+  /**
+   * get()
+   *
+   * Get the kernels to be used.
+   *
+   * @return The best available kernels.
+   **/
+  public static Kernels get(){
+    return ACTIVE;
+  }
+
+  /**
+   * getName()
+   *
+   * Get a name for this implementation.
+   *
+   * @return The name of the implementation.
+   **/
+  public String getName(){
+    return "scalar";
+  }
+
+  /**
+   * unpack()
+   *
+   * Convert packed BGR bytes to opaque packed integer pixels.
+   *
+   * @param src The source bytes.
+   * @param dst The destination pixels.
+   * @param n The number of pixels.
+   **/
+  public void unpack(byte[] src, int[] dst, int n){
+    for(int i = 0, j = 0; i < n; i++, j += 3){
+      dst[i] = 0xFF000000 |
+               ((src[j + 2] & 0xFF) << 16) |
+               ((src[j + 1] & 0xFF) <<  8) |
+               ((src[j    ] & 0xFF)      );
+    }
+  }
+
+  /**
+   * accumulate()
+   *
+   * Add a weighted row of pixels to per channel sums. The sums are held as
+   * four planes of the row width, alpha, red, green and then blue.
+   *
+   * @param src The source pixels.
+   * @param so The offset of the row in the source.
+   * @param w The width of the row.
+   * @param weight The weight of the row.
+   * @param acc The sums, at least four times the width.
+   **/
+  public void accumulate(int[] src, int so, int w, int weight, int[] acc){
+    for(int x = 0; x < w; x++){
+      int p = src[so + x];
+      acc[x        ] += (p >>> 24       ) * weight;
+      acc[x + w    ] += ((p >> 16) & 0xFF) * weight;
+      acc[x + w * 2] += ((p >>  8) & 0xFF) * weight;
+      acc[x + w * 3] += ((p      ) & 0xFF) * weight;
+    }
+  }
+
+  /**
+   * run()
+   *
+   * Find the end of a run of pixels close in colour to a given colour.
+   *
+   * @param px The pixels.
+   * @param from The first pixel to be checked.
+   * @param to The pixel after the last to be checked.
+   * @param c The colour to compare against.
+   * @param limit The squared RGB distance at which a pixel ends the run.
+   * @return The first pixel not in the run, otherwise the end.
+   **/
+  public int run(int[] px, int from, int to, int c, int limit){
+    int cr = (c >> 16) & 0xFF;
+    int cg = (c >>  8) & 0xFF;
+    int cb = (c      ) & 0xFF;
+    for(int i = from; i < to; i++){
+      int p = px[i];
+      int dr = ((p >> 16) & 0xFF) - cr;
+      int dg = ((p >>  8) & 0xFF) - cg;
+      int db = ((p      ) & 0xFF) - cb;
+      if(dr * dr + dg * dg + db * db >= limit){
+        return i;
+      }
+    }
+    return to;
+  }
+
+  /**
+   * select()
+   *
+   * Choose the kernels to be used, only trusting vectorized kernels that
+   * agree with the scalar ones.
+   *
+   * @return The kernels to be used.
+   **/
+  private static Kernels select(){
+    Kernels scalar = new Kernels();
+    if(!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()){
+      return scalar;
+    }
+    try{
+      Kernels vector = (Kernels)Class.forName(VECTOR_CLASS)
+        .getDeclaredConstructor()
+        .newInstance();
+      if(agree(scalar, vector)){
+        return vector;
+      }
+      System.err.println("(internal) Vector kernels disagree, using scalar.");
+    }catch(ReflectiveOperationException | LinkageError e){
+      /* Not compiled in, fall back */
+    }
+    return scalar;
+  }
+
+  /**
+   * agree()
+   *
+   * Check that two implementations give identical results on random
+   * pixels, over lengths covering both whole vectors and the tails.
+   *
+   * @param a The reference implementation.
+   * @param b The implementation to be checked.
+   * @return True if every result is identical, otherwise false.
+   **/
+  private static boolean agree(Kernels a, Kernels b){
+    Random rand = new Random(1);
+    for(int n = 1; n < 80; n += 7){
+      /* Unpacking */
+      byte[] bgr = new byte[n * 3];
+      rand.nextBytes(bgr);
+      int[] pa = new int[n];
+      int[] pb = new int[n];
+      a.unpack(bgr, pa, n);
+      b.unpack(bgr, pb, n);
+      if(!Arrays.equals(pa, pb)){
+        return false;
+      }
+      /* Weighted sums, negative weights included */
+      int[] src = new int[n + 3];
+      for(int x = 0; x < src.length; x++){
+        src[x] = rand.nextInt();
+      }
+      int[] sa = new int[n * 4];
+      int[] sb = new int[n * 4];
+      for(int k = 0; k < 3; k++){
+        int weight = rand.nextInt(1 << 15) - (1 << 13);
+        a.accumulate(src, k, n, weight, sa);
+        b.accumulate(src, k, n, weight, sb);
+      }
+      if(!Arrays.equals(sa, sb)){
+        return false;
+      }
+      /* Colour runs, ending at each position in turn */
+      for(int e = 0; e <= n; e++){
+        int c = rand.nextInt();
+        for(int x = 0; x < n; x++){
+          src[x] = c ^ (x == e ? 0x800000 : rand.nextInt(8) * 0x010101);
+        }
+        if(a.run(src, 0, n, c, 1024) != b.run(src, 0, n, c, 1024)){
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,100 @@
+package b.img;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * KernelsVector.java
+ *
+ * Vectorized pixel kernels built on the incubating Vector API. This class
+ * is only ever loaded reflectively by Kernels, so that the rest of the
+ * program runs without the module. Every kernel handles the pixels that
+ * don't fill a whole vector with the scalar code.
+ **/
+public class KernelsVector extends Kernels{
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_128;
+  /* Spread 4 BGR pixels from 12 bytes into 16, leaving the top byte */
+  private static final VectorShuffle<Byte> SPREAD = VectorShuffle.fromValues(
+    BYTES, 0, 1, 2, 0, 3, 4, 5, 0, 6, 7, 8, 0, 9, 10, 11, 0
+  );
+
+  @Override
+  public String getName(){
+    return "vector " + INTS.vectorBitSize() + " bit";
+  }
+
+  @Override
+  public void unpack(byte[] src, int[] dst, int n){
+    int i = 0;
+    /* Each load reads 16 bytes but only uses 12 of them */
+    for(; i + 4 <= n && i * 3 + 16 <= src.length; i += 4){
+      ByteVector.fromArray(BYTES, src, i * 3)
+        .rearrange(SPREAD)
+        .reinterpretAsInts()
+        .or(0xFF000000)
+        .intoArray(dst, i);
+    }
+    for(; i < n; i++){
+      int j = i * 3;
+      dst[i] = 0xFF000000 |
+               ((src[j + 2] & 0xFF) << 16) |
+               ((src[j + 1] & 0xFF) <<  8) |
+               ((src[j    ] & 0xFF)      );
+    }
+  }
+
+  @Override
+  public void accumulate(int[] src, int so, int w, int weight, int[] acc){
+    int bound = INTS.loopBound(w);
+    int x = 0;
+    for(; x < bound; x += INTS.length()){
+      IntVector p = IntVector.fromArray(INTS, src, so + x);
+      IntVector.fromArray(INTS, acc, x)
+        .add(p.lanewise(VectorOperators.LSHR, 24).mul(weight))
+        .intoArray(acc, x);
+      IntVector.fromArray(INTS, acc, x + w)
+        .add(p.lanewise(VectorOperators.ASHR, 16).and(0xFF).mul(weight))
+        .intoArray(acc, x + w);
+      IntVector.fromArray(INTS, acc, x + w * 2)
+        .add(p.lanewise(VectorOperators.ASHR, 8).and(0xFF).mul(weight))
+        .intoArray(acc, x + w * 2);
+      IntVector.fromArray(INTS, acc, x + w * 3)
+        .add(p.and(0xFF).mul(weight))
+        .intoArray(acc, x + w * 3);
+    }
+    for(; x < w; x++){
+      int p = src[so + x];
+      acc[x        ] += (p >>> 24       ) * weight;
+      acc[x + w    ] += ((p >> 16) & 0xFF) * weight;
+      acc[x + w * 2] += ((p >>  8) & 0xFF) * weight;
+      acc[x + w * 3] += ((p      ) & 0xFF) * weight;
+    }
+  }
+
+  @Override
+  public int run(int[] px, int from, int to, int c, int limit){
+    int cr = (c >> 16) & 0xFF;
+    int cg = (c >>  8) & 0xFF;
+    int cb = (c      ) & 0xFF;
+    int i = from;
+    for(; i + INTS.length() <= to; i += INTS.length()){
+      IntVector p = IntVector.fromArray(INTS, px, i);
+      IntVector dr = p.lanewise(VectorOperators.ASHR, 16).and(0xFF).sub(cr);
+      IntVector dg = p.lanewise(VectorOperators.ASHR, 8).and(0xFF).sub(cg);
+      IntVector db = p.and(0xFF).sub(cb);
+      VectorMask<Integer> far = dr.mul(dr)
+        .add(dg.mul(dg))
+        .add(db.mul(db))
+        .compare(VectorOperators.GE, limit);
+      if(far.anyTrue()){
+        return i + far.firstTrue();
+      }
+    }
+    return super.run(px, i, to, c, limit);
+  }
+}
@@ -1,5 +1,9 @@
 package b.img;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
 /**
  * Main.java
  *
@@ -11,15 +15,28 @@ public class Main{
   private final static int VER_MINOR = 1;
   private final static int VER_PATCH = 0;
 
-  private Convert.FORMAT format;
-  private String[] input;
+  private ArrayList<Convert.FORMAT> format;
+  private ArrayList<String> input;
+  private ArrayList<String> globs;
   private int jobs;
+  private int decodeJobs;
+  private int encodeJobs;
   private Convert.METHOD method;
   private String output;
   private Convert.SPEED speed;
-  private int scaleWidth;
-  private int scaleHeight;
+  private Resample.FILTER filter;
+  private ArrayList<int[]> scales;
   private boolean quiet;
+  private String manifest;
+  private boolean hash;
+  private boolean dedup;
+  private int serve;
+  private long cacheBytes;
+  private boolean stats;
+  private boolean stream;
+  private int palette;
+  private Distance.METRIC metric;
+  private long maxBytes;
 
   /**
    * main()
@@ -44,15 +61,28 @@ public class Main{
    **/
   public Main(String[] args){
     /* Set default values */
-    format = Convert.FORMAT.JPEG;
-    input = null;
+    format = new ArrayList<Convert.FORMAT>();
+    input = new ArrayList<String>();
+    globs = new ArrayList<String>();
     jobs = 1;
+    decodeJobs = -1;
+    encodeJobs = -1;
     method = Convert.METHOD.SCALE;
     output = "%f-%i-%t";
     speed = Convert.SPEED.NORMAL;
-    scaleWidth = 256;
-    scaleHeight = 256;
+    filter = null;
+    scales = new ArrayList<int[]>();
     quiet = false;
+    manifest = null;
+    hash = false;
+    dedup = false;
+    serve = -1;
+    cacheBytes = 64L * 1024 * 1024;
+    stats = false;
+    stream = false;
+    palette = 0;
+    metric = Distance.METRIC.RGB;
+    maxBytes = 0;
     /* Loop the command line parameters */
     for(int x = 0; x < args.length; x++){
       switch(args[x]){
@@ -60,10 +90,42 @@ public class Main{
         case "--about" :
           x = about(args, x);
           break;
+        case "-b" :
+        case "--stream" :
+          x = stream(args, x);
+          break;
+        case "-c" :
+        case "--colour-distance" :
+          x = colourDistance(args, x);
+          break;
+        case "-d" :
+        case "--decode-jobs" :
+          x = decodeJobs(args, x);
+          break;
+        case "-C" :
+        case "--cache" :
+          x = cache(args, x);
+          break;
+        case "-D" :
+        case "--dedup" :
+          x = dedup(args, x);
+          break;
+        case "-e" :
+        case "--encode-jobs" :
+          x = encodeJobs(args, x);
+          break;
         case "-f" :
         case "--format" :
           x = format(args, x);
           break;
+        case "-g" :
+        case "--glob" :
+          x = glob(args, x);
+          break;
+        case "-H" :
+        case "--hash" :
+          x = hash(args, x);
+          break;
         case "-i" :
         case "--input" :
           x = input(args, x);
@@ -80,18 +142,42 @@ public class Main{
         case "--method" :
           x = method(args, x);
           break;
+        case "-M" :
+        case "--max-bytes" :
+          x = maxBytes(args, x);
+          break;
+        case "-n" :
+        case "--incremental" :
+          x = incremental(args, x);
+          break;
         case "-o" :
         case "--output" :
           x = output(args, x);
           break;
+        case "-p" :
+        case "--palette" :
+          x = palette(args, x);
+          break;
         case "-q" :
         case "--quiet" :
           x = quiet(args, x);
           break;
+        case "-r" :
+        case "--resample" :
+          x = resample(args, x);
+          break;
+        case "-S" :
+        case "--serve" :
+          x = serve(args, x);
+          break;
         case "-s" :
         case "--speed" :
           x = speed(args, x);
           break;
+        case "-t" :
+        case "--stats" :
+          x = stats(args, x);
+          break;
         case "-x" :
         case "--scale" :
           x = scale(args, x);
@@ -105,26 +191,71 @@ public class Main{
           break;
       }
     }
+    /* Fill in defaults for anything not given */
+    if(format.size() < 1){
+      format.add(Convert.FORMAT.JPEG);
+    }
+    if(scales.size() < 1){
+      scales.add(new int[]{256, 256});
+    }
+    /* Run as a server if requested */
+    if(serve >= 0){
+      try{
+        Server server = new Server(serve, jobs, cacheBytes);
+        server.setFilter(filter);
+        server.setPalette(palette);
+        server.setMetric(metric);
+        server.setMaxBytes(maxBytes);
+        server.start();
+      }catch(IOException e){
+        error("Unable to start server on port " + serve + ".");
+      }
+      if(!quiet){
+        System.out.println("Serving previews on port " + serve);
+      }
     /* Check if we can actually start conversion */
-    if(input != null){
+    }else if(input.size() > 0){
       Convert convert = new Convert(
-        format,
-        input,
+        format.toArray(new Convert.FORMAT[format.size()]),
+        input.toArray(new String[input.size()]),
+        globs.toArray(new String[globs.size()]),
         jobs,
         method,
         output,
         speed,
-        scaleWidth,
-        scaleHeight
+        scales.toArray(new int[scales.size()][])
       );
+      convert.setDecodeJobs(decodeJobs > 0 ? decodeJobs : jobs);
+      convert.setEncodeJobs(encodeJobs > 0 ? encodeJobs : jobs);
+      convert.setFilter(filter);
+      if(manifest != null){
+        convert.setIncremental(new File(manifest), hash);
+      }
+      if(dedup){
+        convert.setDedup();
+      }
+      if(stats){
+        convert.setStats();
+      }
+      if(stream){
+        convert.setStream();
+      }
+      convert.setPalette(palette);
+      convert.setMetric(metric);
+      convert.setMaxBytes(maxBytes);
       if(!convert.isReady()){
         error("Unable to start the conversion process.");
       }
       convert.process();
       if(!quiet){
         /* Display conversion progress */
-        while(convert.progress() < 1.0f){
-          System.out.println("Progress: " + (100.0f * convert.progress()) + "%");
+        while(!convert.isComplete()){
+          System.out.println(
+            "Progress: " + (100.0f * convert.progress()) + "% (" +
+            convert.getCompleted() + "/" + convert.getStarted() + ", " +
+            convert.getSkipped() + " up to date, " +
+            convert.getDuplicates() + " duplicates)"
+          );
           try{
             Thread.sleep(1000);
           }catch(InterruptedException e){
@@ -160,15 +291,29 @@ public class Main{
   }
 
   /**
-   * format()
+   * stream()
    *
-   * Set the desired output format.
+   * Set the stream flag.
    *
    * @param args The command line arguments.
    * @param x Current offset into the program.
    * @return The new offset into the command line parameters.
    **/
-  private int format(String[] args, int x){
+  private int stream(String[] args, int x){
+    stream = true;
+    return x;
+  }
+
+  /**
+   * colourDistance()
+   *
+   * Set how the distance between colours is measured for SVG output.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int colourDistance(String[] args, int x){
     /* Make sure enough parameters exist */
     if(x + 1 >= args.length){
       error("Not enough parameters provided.");
@@ -176,22 +321,195 @@ public class Main{
     /* Perform conversion */
     ++x;
     switch(args[x]){
-      case "png" :
-        format = Convert.FORMAT.PNG;
+      case "rgb" :
+        metric = Distance.METRIC.RGB;
         break;
-      case "jpeg" :
-        format = Convert.FORMAT.JPEG;
+      case "weighted" :
+        metric = Distance.METRIC.WEIGHTED;
         break;
-      case "svg" :
-        format = Convert.FORMAT.SVG;
+      case "lab" :
+        metric = Distance.METRIC.LAB;
         break;
       default :
-        error("Unknown format '" + args[x] + "'.");
+        error("Unknown colour distance '" + args[x] + "'.");
         break;
     }
     return x;
   }
 
+  /**
+   * decodeJobs()
+   *
+   * Get a number of threads to be used for decoding input images.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int decodeJobs(String[] args, int x){
+    /* Make sure enough parameters exist */
+    if(x + 1 >= args.length){
+      error("Not enough parameters provided.");
+    }
+    /* Perform conversion */
+    ++x;
+    decodeJobs = parseJobs(args[x]);
+    return x;
+  }
+
+  /**
+   * cache()
+   *
+   * Set the size of the preview cache in server mode.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int cache(String[] args, int x){
+    /* Make sure enough parameters exist */
+    if(x + 1 >= args.length){
+      error("Not enough parameters provided.");
+    }
+    /* Perform conversion */
+    ++x;
+    try{
+      cacheBytes = Long.parseLong(args[x]) * 1024 * 1024;
+    }catch(NumberFormatException e){
+      error("Unable to convert number '" + args[x] + "'.");
+    }
+    /* Check output is sane */
+    if(cacheBytes < 0){
+      error("Invalid cache size '" + args[x] + "'.");
+    }
+    return x;
+  }
+
+  /**
+   * dedup()
+   *
+   * Convert inputs with identical content only once.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int dedup(String[] args, int x){
+    dedup = true;
+    return x;
+  }
+
+  /**
+   * encodeJobs()
+   *
+   * Get a number of threads to be used for encoding output images.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int encodeJobs(String[] args, int x){
+    /* Make sure enough parameters exist */
+    if(x + 1 >= args.length){
+      error("Not enough parameters provided.");
+    }
+    /* Perform conversion */
+    ++x;
+    encodeJobs = parseJobs(args[x]);
+    return x;
+  }
+
+  /**
+   * format()
+   *
+   * Set the desired output formats, one or more may be given.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int format(String[] args, int x){
+    /* Make sure enough parameters exist */
+    if(x + 1 >= args.length){
+      error("Not enough parameters provided.");
+    }
+    /* Perform conversion */
+    do{
+      ++x;
+      Convert.FORMAT f = null;
+      switch(args[x]){
+        case "png" :
+          f = Convert.FORMAT.PNG;
+          break;
+        case "jpeg" :
+          f = Convert.FORMAT.JPEG;
+          break;
+        case "svg" :
+          f = Convert.FORMAT.SVG;
+          break;
+        default :
+          error("Unknown format '" + args[x] + "'.");
+          break;
+      }
+      if(!format.contains(f)){
+        format.add(f);
+      }
+    }while(x + 1 < args.length && args[x + 1].charAt(0) != '-');
+    return x;
+  }
+
+  /**
+   * glob()
+   *
+   * Add a pattern that files found in input directories must match.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int glob(String[] args, int x){
+    /* Make sure enough parameters exist */
+    if(x + 1 >= args.length){
+      error("Not enough parameters provided.");
+    }
+    ++x;
+    globs.add(args[x]);
+    return x;
+  }
+
+  /**
+   * hash()
+   *
+   * Hash the content of inputs when checking whether they have changed.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int hash(String[] args, int x){
+    hash = true;
+    return x;
+  }
+
+  /**
+   * incremental()
+   *
+   * Set the manifest used to skip inputs that are already up to date.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int incremental(String[] args, int x){
+    /* Make sure enough parameters exist */
+    if(x + 1 >= args.length){
+      error("Not enough parameters provided.");
+    }
+    ++x;
+    manifest = args[x];
+    return x;
+  }
+
   /**
    * input()
    *
@@ -203,40 +521,19 @@ public class Main{
    **/
   private int input(String[] args, int x){
     ++x;
-    /* Count input files */
+    /* Store input files until a parameter indicator is found, a lone dash
+       is standard input rather than a parameter */
     int count = 0;
-    for(int i = x; i < args.length; i++){
-      /* Make sure parameter indicator doesn't exist */
-      if(args[i].charAt(0) != '-'){
-        ++count;
-      }else{
-        break;
-      }
+    while(x < args.length && (!args[x].startsWith("-") || args[x].equals("-"))){
+      input.add(args[x]);
+      ++count;
+      ++x;
     }
     /* Make sure there is something to input */
     if(count < 1){
       error("No inputs provided.");
     }
-    /* Create new input array and store */
-    int offset;
-    if(input == null){
-      offset = 0;
-      input = new String[count];
-    }else{
-      offset = input.length;
-      String[] temp = new String[input.length + count];
-      /* Copy existing */
-      for(int i = 0; i < input.length; i++){
-        temp[i] = input[i];
-      }
-      /* Finalize */
-      input = temp;
-    }
-    /* Copy new */
-    for(int i = 0; i < count; i++){
-      input[offset + i] = args[x + i];
-    }
-    return x + count - 1;
+    return x - 1;
   }
 
   /**
@@ -255,16 +552,30 @@ public class Main{
     }
     /* Perform conversion */
     ++x;
+    jobs = parseJobs(args[x]);
+    return x;
+  }
+
+  /**
+   * parseJobs()
+   *
+   * Convert a parameter into a sane number of threads.
+   *
+   * @param arg The command line parameter to be converted.
+   * @return The number of threads.
+   **/
+  private static int parseJobs(String arg){
+    int n = 0;
     try{
-      jobs = Integer.parseInt(args[x]);
+      n = Integer.parseInt(arg);
     }catch(NumberFormatException e){
-      error("Unable to convert number '" + args[x] + "'.");
+      error("Unable to convert number '" + arg + "'.");
     }
     /* Check output is sane */
-    if(jobs < 1 || jobs > 1024){
-      error("Invalid number of jobs '" + jobs + "'.");
+    if(n < 1 || n > 1024){
+      error("Invalid number of jobs '" + n + "'.");
     }
-    return x;
+    return n;
   }
 
   /**
@@ -282,37 +593,100 @@ public class Main{
     System.out.println("  OPTions");
     System.out.println("");
     System.out.println("    -a  --about    Display information about program");
-    System.out.println("    -f  --format   The desired output format");
+    System.out.println("    -b  --stream   Decode input in bands of rows");
+    System.out.println("                     Done anyway for input too large");
+    System.out.println("                     to hold in memory");
+    System.out.println("    -c  --colour-distance  Colour difference for SVG");
+    System.out.println("                     rgb      = Plain RGB, default");
+    System.out.println("                     weighted = RGB weighted to the eye");
+    System.out.println("                     lab      = Approximate CIELAB");
+    System.out.println("    -d  --decode-jobs  Number of threads decoding input");
+    System.out.println("                     Defaults to the number of jobs");
+    System.out.println("    -C  --cache    Preview cache size in MB for server");
+    System.out.println("                     Defaults to 64");
+    System.out.println("    -D  --dedup    Convert identical inputs only once");
+    System.out.println("                     Duplicates are hard linked, or");
+    System.out.println("                     copied if linking isn't possible");
+    System.out.println("    -e  --encode-jobs  Number of threads encoding output");
+    System.out.println("                     Defaults to the number of jobs");
+    System.out.println("    -f  --format   The desired output formats");
     System.out.println("                     png  = Quality bitmap");
     System.out.println("                     jpeg = Smaller bitmap");
     System.out.println("                     svg  = Scalar");
+    System.out.println("                     For example:");
+    System.out.println("                       img-preview -f png svg");
+    System.out.println("    -g  --glob     Pattern for files found in directories");
+    System.out.println("                     Defaults to any readable image");
+    System.out.println("                     For example:");
+    System.out.println("                       img-preview -i dir -g '*.jpg'");
+    System.out.println("    -H  --hash     Hash input content in incremental mode");
+    System.out.println("                     Detects changes that keep the size");
+    System.out.println("                     and modification time, but reads");
+    System.out.println("                     every input in full");
     System.out.println("    -i  --input    Feed one or more input images");
+    System.out.println("                     Directories are walked recursively");
     System.out.println("                     For example:");
     System.out.println("                       img-preview -i 1.png");
     System.out.println("                       img-preview -i 1.png 2.png");
-    System.out.println("    -j  --jobs     Number of threads to use");
+    System.out.println("                       img-preview -i photos/");
+    System.out.println("                     Lists of inputs may be given as");
+    System.out.println("                     newline or NUL separated paths:");
+    System.out.println("                       img-preview -i @list.txt");
+    System.out.println("                       find . -print0 | img-preview -i -");
+    System.out.println("    -j  --jobs     Number of threads to use for scaling");
     System.out.println("    -h  --help     Display this help");
     System.out.println("    -m  --method   Set the method to be used");
     System.out.println("                     scale = Image scaling");
+    System.out.println("    -M  --max-bytes  Keep each output within a size");
+    System.out.println("                     Searches JPEG quality or the SVG");
+    System.out.println("                     colour threshold, shrinking the");
+    System.out.println("                     output if that isn't enough");
+    System.out.println("                     For example:");
+    System.out.println("                       img-preview -f jpeg -M 8192");
+    System.out.println("    -n  --incremental  Skip inputs already converted");
+    System.out.println("                     Takes a manifest file recording");
+    System.out.println("                     previous outputs, for example:");
+    System.out.println("                       img-preview -n previews.txt");
     System.out.println("    -o  --output   Define the output format");
     System.out.println("                     Use the following markers:");
     System.out.println("                       %f = filename");
     System.out.println("                       %i = counter");
     System.out.println("                       %t = current timestamp");
+    System.out.println("                       %s = scale, i.e. 256x256");
     System.out.println("                     For example:");
     System.out.println("                       img-preview -o %f-%i");
+    System.out.println("    -p  --palette  Reduce SVG output to a number of colours");
+    System.out.println("                     Each colour becomes a style class");
+    System.out.println("                     For example:");
+    System.out.println("                       img-preview -f svg -p 32");
     System.out.println("    -q  --quiet    No conversion progress printing");
+    System.out.println("    -r  --resample The resampling filter to be used");
+    System.out.println("                     Defaults to one suiting the speed");
+    System.out.println("                       box      = Area average");
+    System.out.println("                       triangle = Bilinear");
+    System.out.println("                       mitchell = Normal default");
+    System.out.println("                       lanczos3 = Slow default");
+    System.out.println("    -S  --serve    Serve previews over HTTP on a port");
+    System.out.println("                     Only listens on the local machine");
+    System.out.println("                     For example:");
+    System.out.println("                       img-preview -S 8080");
+    System.out.println("                       curl 'localhost:8080/preview?");
+    System.out.println("                         path=1.png&format=png&");
+    System.out.println("                         speed=slow&width=64&height=64'");
     System.out.println("    -s  --speed    Desired conversion speed");
     System.out.println("                     Select speed at cost of quality");
     System.out.println("                       fast   = Fast, low quality");
     System.out.println("                       normal = Default");
     System.out.println("                       slow   = Slow, high quality");
+    System.out.println("    -t  --stats    Display bytes allocated per image");
     System.out.println("    -x  --scale    The desired output scale");
     System.out.println("                     The parameters are:");
     System.out.println("                       width  = Width in pixels");
     System.out.println("                       height = Height in pixels");
     System.out.println("                     The format is:");
     System.out.println("                       img-preview -x width height");
+    System.out.println("                     Several scales may be given:");
+    System.out.println("                       img-preview -x 512 512 256 256");
     System.out.println("    -v  --version  Display program version");
     System.exit(0);
     return x;
@@ -345,6 +719,34 @@ public class Main{
     return x;
   }
 
+  /**
+   * maxBytes()
+   *
+   * Set the maximum number of bytes for each output.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int maxBytes(String[] args, int x){
+    /* Make sure enough parameters exist */
+    if(x + 1 >= args.length){
+      error("Not enough parameters provided.");
+    }
+    /* Perform conversion */
+    ++x;
+    try{
+      maxBytes = Long.parseLong(args[x]);
+    }catch(NumberFormatException e){
+      error("Unable to convert number '" + args[x] + "'.");
+    }
+    /* Check output is sane */
+    if(maxBytes < 1){
+      error("Invalid byte budget '" + args[x] + "'.");
+    }
+    return x;
+  }
+
   /**
    * output()
    *
@@ -365,6 +767,34 @@ public class Main{
     return x;
   }
 
+  /**
+   * palette()
+   *
+   * Set the number of colours SVG output is reduced to.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int palette(String[] args, int x){
+    /* Make sure enough parameters exist */
+    if(x + 1 >= args.length){
+      error("Not enough parameters provided.");
+    }
+    /* Perform conversion */
+    ++x;
+    try{
+      palette = Integer.parseInt(args[x]);
+    }catch(NumberFormatException e){
+      error("Unable to convert number '" + args[x] + "'.");
+    }
+    /* Check output is sane */
+    if(palette < 1 || palette > 4096){
+      error("Invalid palette size '" + args[x] + "'.");
+    }
+    return x;
+  }
+
   /**
    * quiet()
    *
@@ -379,6 +809,70 @@ public class Main{
     return x;
   }
 
+  /**
+   * resample()
+   *
+   * Set the resampling filter.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int resample(String[] args, int x){
+    /* Make sure enough parameters exist */
+    if(x + 1 >= args.length){
+      error("Not enough parameters provided.");
+    }
+    /* Perform conversion */
+    ++x;
+    switch(args[x]){
+      case "box" :
+        filter = Resample.FILTER.BOX;
+        break;
+      case "triangle" :
+        filter = Resample.FILTER.TRIANGLE;
+        break;
+      case "mitchell" :
+        filter = Resample.FILTER.MITCHELL;
+        break;
+      case "lanczos3" :
+        filter = Resample.FILTER.LANCZOS3;
+        break;
+      default :
+        error("Unknown filter '" + args[x] + "'.");
+        break;
+    }
+    return x;
+  }
+
+  /**
+   * serve()
+   *
+   * Run as a preview server on the given port.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int serve(String[] args, int x){
+    /* Make sure enough parameters exist */
+    if(x + 1 >= args.length){
+      error("Not enough parameters provided.");
+    }
+    /* Perform conversion */
+    ++x;
+    try{
+      serve = Integer.parseInt(args[x]);
+    }catch(NumberFormatException e){
+      error("Unable to convert number '" + args[x] + "'.");
+    }
+    /* Check output is sane */
+    if(serve < 0 || serve > 65535){
+      error("Invalid port '" + serve + "'.");
+    }
+    return x;
+  }
+
   /**
    * speed()
    *
@@ -412,10 +906,25 @@ public class Main{
     return x;
   }
 
+  /**
+   * stats()
+   *
+   * Set the statistics flag.
+   *
+   * @param args The command line arguments.
+   * @param x Current offset into the program.
+   * @return The new offset into the command line parameters.
+   **/
+  private int stats(String[] args, int x){
+    stats = true;
+    return x;
+  }
+
   /**
    * scale()
    *
-   * Set the desired output scale.
+   * Set the desired output scales, one or more width and height pairs may
+   * be given.
    *
    * @param args The command line arguments.
    * @param x Current offset into the program.
@@ -423,22 +932,27 @@ public class Main{
    **/
   private int scale(String[] args, int x){
     /* Make sure enough parameters exist */
-    if(x + 1 >= args.length){
+    if(x + 2 >= args.length){
       error("Not enough parameters provided.");
     }
     /* Perform conversion */
-    try{
-      ++x;
-      scaleWidth = Integer.parseInt(args[x]);
-      ++x;
-      scaleHeight = Integer.parseInt(args[x]);
-    }catch(NumberFormatException e){
-      error("Unable to convert number '" + args[x] + "'.");
-    }
-    /* Check output is sane */
-    if(scaleWidth < 1 || scaleHeight < 1){
-      error("Invalid scale width or height.");
-    }
+    do{
+      int scaleWidth = 0;
+      int scaleHeight = 0;
+      try{
+        ++x;
+        scaleWidth = Integer.parseInt(args[x]);
+        ++x;
+        scaleHeight = Integer.parseInt(args[x]);
+      }catch(NumberFormatException e){
+        error("Unable to convert number '" + args[x] + "'.");
+      }
+      /* Check output is sane */
+      if(scaleWidth < 1 || scaleHeight < 1){
+        error("Invalid scale width or height.");
+      }
+      scales.add(new int[]{scaleWidth, scaleHeight});
+    }while(x + 2 < args.length && args[x + 1].charAt(0) != '-');
     return x;
   }
 
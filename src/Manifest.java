@@ -0,0 +1,315 @@
+package b.img;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Manifest.java
+ *
+ * A record of the outputs previously generated, used to skip inputs that
+ * have not changed since they were last converted. Each entry is keyed by
+ * the input path and the conversion parameters, and stores a signature of
+ * the input (size, modification time and optionally a content hash) along
+ * with the output that was written for it.
+ *
+ * The manifest is appended to and flushed as each output is written, so an
+ * interrupted run keeps its progress, and is compacted when closed.
+ **/
+public class Manifest{
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private File file;
+  private boolean hash;
+  private HashMap<String, String[]> entries;
+  /* The key each output was last written for */
+  private HashMap<String, String> owners;
+  private BufferedWriter log;
+
+  /**
+   * Manifest()
+   *
+   * Open a manifest, loading any existing entries.
+   *
+   * @param file The manifest file, created if it doesn't exist.
+   * @param hash True if input content should be part of the signature.
+   * @throws IOException If the manifest could not be read or opened.
+   **/
+  public Manifest(File file, boolean hash) throws IOException{
+    this.file = file;
+    this.hash = hash;
+    entries = new HashMap<String, String[]>();
+    owners = new HashMap<String, String>();
+    if(file.exists()){
+      BufferedReader br = new BufferedReader(new FileReader(file));
+      try{
+        String line;
+        while((line = br.readLine()) != null){
+          String[] e = line.split("\t", -1);
+          /* Later entries replace earlier ones, ignore damaged lines */
+          if(e.length == 3){
+            put(unescape(e[0]), e[1], unescape(e[2]));
+          }
+        }
+      }finally{
+        br.close();
+      }
+    }
+    log = new BufferedWriter(new FileWriter(file, true));
+  }
+
+  /**
+   * key()
+   *
+   * Generate the key identifying an output of an input.
+   *
+   * @param in The input, by path or by content hash.
+   * @param settings Every setting affecting the output, joined together.
+   * @param t The output target.
+   * @return The key for the entry.
+   **/
+  public static String key(String in, String settings, Target t){
+    return in + "|" + settings + "|" +
+      t.getFormat() + "|" + t.getWidth() + "x" + t.getHeight();
+  }
+
+  /**
+   * signature()
+   *
+   * Generate the signature of an input, which changes when the input does.
+   *
+   * @param in The input file.
+   * @param known The hash of the input if already known, otherwise NULL.
+   * @return The signature of the input, otherwise NULL if it couldn't be
+   * read.
+   **/
+  public String signature(File in, String known){
+    String sig = in.length() + ":" + in.lastModified();
+    if(hash){
+      String h = known != null ? known : hash(in);
+      if(h == null){
+        return null;
+      }
+      sig += ":" + h;
+    }
+    return sig;
+  }
+
+  /**
+   * getOutput()
+   *
+   * Get the output previously written for a key.
+   *
+   * @param key The key of the entry.
+   * @return The previous output, otherwise NULL if there is none.
+   **/
+  public synchronized File getOutput(String key){
+    String[] e = entries.get(key);
+    return e != null ? new File(e[1]) : null;
+  }
+
+  /**
+   * isOutput()
+   *
+   * Check whether a file is an output this manifest records, and so may be
+   * replaced when its entry is out of date.
+   *
+   * @param output The file.
+   * @return True if the file was written as an output, otherwise false.
+   **/
+  public synchronized boolean isOutput(File output){
+    return owners.containsKey(output.getAbsolutePath());
+  }
+
+  /**
+   * isCurrent()
+   *
+   * Check whether an output was previously written with the same input
+   * signature and still exists.
+   *
+   * @param key The key of the entry.
+   * @param sig The current signature of the input.
+   * @return True if the output is up to date, otherwise false.
+   **/
+  public synchronized boolean isCurrent(String key, String sig){
+    String[] e = entries.get(key);
+    return e != null && e[0].equals(sig) && new File(e[1]).exists();
+  }
+
+  /**
+   * record()
+   *
+   * Record that an output has been written.
+   *
+   * @param key The key of the entry.
+   * @param sig The signature of the input that was converted.
+   * @param output The output that was written.
+   **/
+  public synchronized void record(String key, String sig, File output){
+    String path = output.getAbsolutePath();
+    put(key, sig, path);
+    try{
+      log.write(escape(key) + "\t" + sig + "\t" + escape(path) + "\n");
+      /* Survive the process being killed, not just a clean exit */
+      log.flush();
+    }catch(IOException e){
+      System.err.println("(internal) Unable to write to manifest.");
+    }
+  }
+
+  /**
+   * put()
+   *
+   * Set an entry, dropping any other entry for the same output, as that
+   * output no longer holds what the other entry was written with.
+   *
+   * @param key The key of the entry.
+   * @param sig The signature of the input that was converted.
+   * @param path The absolute path of the output.
+   **/
+  private void put(String key, String sig, String path){
+    String[] prev = entries.put(key, new String[]{sig, path});
+    if(prev != null && !prev[1].equals(path)){
+      owners.remove(prev[1]);
+    }
+    String owner = owners.put(path, key);
+    if(owner != null && !owner.equals(key)){
+      entries.remove(owner);
+    }
+  }
+
+  /**
+   * close()
+   *
+   * Compact the manifest down to one line per entry and close it.
+   **/
+  public synchronized void close(){
+    try{
+      log.close();
+      File tmp = new File(file.getAbsolutePath() + ".tmp");
+      BufferedWriter bw = new BufferedWriter(new FileWriter(tmp));
+      try{
+        for(Map.Entry<String, String[]> e : entries.entrySet()){
+          bw.write(
+            escape(e.getKey()) + "\t" + e.getValue()[0] + "\t" +
+            escape(e.getValue()[1]) + "\n"
+          );
+        }
+      }finally{
+        bw.close();
+      }
+      if(!tmp.renameTo(file)){
+        System.err.println("(internal) Unable to compact manifest.");
+        tmp.delete();
+      }
+    }catch(IOException e){
+      System.err.println("(internal) Unable to write to manifest.");
+    }
+  }
+
+  /**
+   * hash()
+   *
+   * Calculate a hash of a file's content.
+   *
+   * @param in The file to be hashed.
+   * @return The hex encoded hash, otherwise NULL if it couldn't be read.
+   **/
+  public static String hash(File in){
+    try{
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      InputStream is = new FileInputStream(in);
+      try{
+        byte[] buff = new byte[65536];
+        int n;
+        while((n = is.read(buff)) > 0){
+          md.update(buff, 0, n);
+        }
+      }finally{
+        is.close();
+      }
+      return hex(md.digest());
+    }catch(IOException e){
+      return null;
+    }catch(NoSuchAlgorithmException e){
+      System.err.println("(internal) No hash algorithm available.");
+      return null;
+    }
+  }
+
+  /**
+   * hash()
+   *
+   * Calculate a hash of content held in memory.
+   *
+   * @param data The content to be hashed.
+   * @return The hex encoded hash, otherwise NULL if it couldn't be hashed.
+   **/
+  public static String hash(byte[] data){
+    try{
+      return hex(MessageDigest.getInstance("SHA-256").digest(data));
+    }catch(NoSuchAlgorithmException e){
+      System.err.println("(internal) No hash algorithm available.");
+      return null;
+    }
+  }
+
+  /**
+   * hex()
+   *
+   * Encode bytes as lower case hex.
+   *
+   * @param d The bytes to be encoded.
+   * @return The hex encoded bytes.
+   **/
+  private static String hex(byte[] d){
+    char[] c = new char[d.length * 2];
+    for(int x = 0; x < d.length; x++){
+      c[x * 2    ] = HEX[(d[x] >> 4) & 0xF];
+      c[x * 2 + 1] = HEX[(d[x]     ) & 0xF];
+    }
+    return new String(c);
+  }
+
+  /**
+   * escape()
+   *
+   * Escape a value so that it fits on a single tab separated line.
+   *
+   * @param s The value to be escaped.
+   * @return The escaped value.
+   **/
+  private static String escape(String s){
+    return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+  }
+
+  /**
+   * unescape()
+   *
+   * Reverse escape().
+   *
+   * @param s The escaped value.
+   * @return The original value.
+   **/
+  private static String unescape(String s){
+    StringBuilder sb = new StringBuilder(s.length());
+    for(int x = 0; x < s.length(); x++){
+      char c = s.charAt(x);
+      if(c == '\\' && x + 1 < s.length()){
+        c = s.charAt(++x);
+        c = c == 't' ? '\t' : c == 'n' ? '\n' : c;
+      }
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+}
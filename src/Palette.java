@@ -0,0 +1,246 @@
+package b.img;
+
+import java.util.Arrays;
+
+/**
+ * Palette.java
+ *
+ * A palette of a few colours chosen for an image by median cut. Colours are
+ * counted at five bits per channel, the box of counted colours is split in
+ * two at the median of its longest side, and the most populous boxes are
+ * split again until there are enough of them. Each box gives one colour,
+ * the mean of the pixels falling in it.
+ **/
+public class Palette{
+  private static final int BITS = 5;
+  private static final int CELLS = 1 << (BITS * 3);
+
+  private int[] colours;
+  private int size;
+  /* The palette entry for each cell, otherwise -1 until first looked up */
+  private int[] lut;
+
+  /**
+   * Palette()
+   *
+   * Choose a palette for some pixels.
+   *
+   * @param px The pixels, the top byte being ignored.
+   * @param n The number of pixels.
+   * @param max The maximum number of colours, at least one.
+   **/
+  public Palette(int[] px, int n, int max){
+    /* Count the pixels and their channel sums in each cell */
+    int[] count = new int[CELLS];
+    long[] sum = new long[CELLS * 3];
+    for(int i = 0; i < n; i++){
+      int p = px[i];
+      int cell = cell(p);
+      ++count[cell];
+      sum[cell * 3    ] += (p >> 16) & 0xFF;
+      sum[cell * 3 + 1] += (p >>  8) & 0xFF;
+      sum[cell * 3 + 2] += (p      ) & 0xFF;
+    }
+    /* Boxes as low and high cell coordinates per channel, inclusive */
+    int[] box = new int[max * 6];
+    int[] pop = new int[max];
+    int boxes = 1;
+    Arrays.fill(box, 3, 6, (1 << BITS) - 1);
+    pop[0] = n;
+    shrink(count, box, 0);
+    /* Split the most populous box that can be split */
+    while(boxes < max){
+      int best = -1;
+      for(int b = 0; b < boxes; b++){
+        boolean single =
+          box[b * 6    ] == box[b * 6 + 3] &&
+          box[b * 6 + 1] == box[b * 6 + 4] &&
+          box[b * 6 + 2] == box[b * 6 + 5];
+        if(!single && (best < 0 || pop[b] > pop[best])){
+          best = b;
+        }
+      }
+      if(best < 0 || pop[best] == 0){
+        break;
+      }
+      split(count, box, pop, best, boxes);
+      ++boxes;
+    }
+    /* Take the mean colour of each box and map its cells to it */
+    colours = new int[boxes];
+    size = boxes;
+    lut = new int[CELLS];
+    Arrays.fill(lut, -1);
+    for(int b = 0; b < boxes; b++){
+      long r = 0;
+      long g = 0;
+      long bl = 0;
+      long k = 0;
+      int o = b * 6;
+      for(int x = box[o]; x <= box[o + 3]; x++){
+        for(int y = box[o + 1]; y <= box[o + 4]; y++){
+          for(int z = box[o + 2]; z <= box[o + 5]; z++){
+            int cell = (x << (BITS * 2)) | (y << BITS) | z;
+            lut[cell] = b;
+            r += sum[cell * 3];
+            g += sum[cell * 3 + 1];
+            bl += sum[cell * 3 + 2];
+            k += count[cell];
+          }
+        }
+      }
+      if(k > 0){
+        colours[b] = (int)(r / k) << 16 | (int)(g / k) << 8 | (int)(bl / k);
+      }
+    }
+  }
+
+  /**
+   * size()
+   *
+   * Get the number of colours in the palette.
+   *
+   * @return The number of colours.
+   **/
+  public int size(){
+    return size;
+  }
+
+  /**
+   * getColour()
+   *
+   * Get a colour of the palette.
+   *
+   * @param i The index of the colour.
+   * @return The RGB colour.
+   **/
+  public int getColour(int i){
+    return colours[i];
+  }
+
+  /**
+   * index()
+   *
+   * Find the palette entry for a colour. Colours outside every box, which
+   * no pixel had, are given the nearest entry.
+   *
+   * @param rgb The colour, the top byte being ignored.
+   * @return The index of the palette entry.
+   **/
+  public int index(int rgb){
+    int cell = cell(rgb);
+    if(lut[cell] < 0){
+      int best = 0;
+      int bestDist = Integer.MAX_VALUE;
+      for(int i = 0; i < size; i++){
+        int dr = ((colours[i] >> 16) & 0xFF) - ((rgb >> 16) & 0xFF);
+        int dg = ((colours[i] >>  8) & 0xFF) - ((rgb >>  8) & 0xFF);
+        int db = ((colours[i]      ) & 0xFF) - ((rgb      ) & 0xFF);
+        int d = dr * dr + dg * dg + db * db;
+        if(d < bestDist){
+          best = i;
+          bestDist = d;
+        }
+      }
+      lut[cell] = best;
+    }
+    return lut[cell];
+  }
+
+  /**
+   * cell()
+   *
+   * Find the histogram cell of a colour.
+   *
+   * @param rgb The colour.
+   * @return The cell index.
+   **/
+  private static int cell(int rgb){
+    return ((rgb >> (24 - BITS)) & 0x1F) << (BITS * 2) |
+           ((rgb >> (16 - BITS)) & 0x1F) << BITS |
+           ((rgb >> ( 8 - BITS)) & 0x1F);
+  }
+
+  /**
+   * shrink()
+   *
+   * Shrink a box to the cells within it that hold pixels.
+   *
+   * @param count The number of pixels in each cell.
+   * @param box The boxes.
+   * @param b The box to shrink.
+   **/
+  private static void shrink(int[] count, int[] box, int b){
+    int o = b * 6;
+    int[] lo = new int[]{box[o + 3], box[o + 4], box[o + 5]};
+    int[] hi = new int[]{box[o], box[o + 1], box[o + 2]};
+    for(int x = box[o]; x <= box[o + 3]; x++){
+      for(int y = box[o + 1]; y <= box[o + 4]; y++){
+        for(int z = box[o + 2]; z <= box[o + 5]; z++){
+          if(count[(x << (BITS * 2)) | (y << BITS) | z] > 0){
+            lo[0] = Math.min(lo[0], x);
+            lo[1] = Math.min(lo[1], y);
+            lo[2] = Math.min(lo[2], z);
+            hi[0] = Math.max(hi[0], x);
+            hi[1] = Math.max(hi[1], y);
+            hi[2] = Math.max(hi[2], z);
+          }
+        }
+      }
+    }
+    /* Leave an empty box as it is */
+    if(lo[0] <= hi[0]){
+      System.arraycopy(lo, 0, box, o, 3);
+      System.arraycopy(hi, 0, box, o + 3, 3);
+    }
+  }
+
+  /**
+   * split()
+   *
+   * Split a box in two at the median of its longest side, the upper half
+   * becoming a new box.
+   *
+   * @param count The number of pixels in each cell.
+   * @param box The boxes.
+   * @param pop The number of pixels in each box.
+   * @param b The box to split.
+   * @param nb The index for the new box.
+   **/
+  private static void split(int[] count, int[] box, int[] pop, int b, int nb){
+    int o = b * 6;
+    /* Pick the longest side */
+    int axis = 0;
+    for(int a = 1; a < 3; a++){
+      if(box[o + a + 3] - box[o + a] > box[o + axis + 3] - box[o + axis]){
+        axis = a;
+      }
+    }
+    /* Count the pixels in each slice along it */
+    int[] slice = new int[1 << BITS];
+    for(int x = box[o]; x <= box[o + 3]; x++){
+      for(int y = box[o + 1]; y <= box[o + 4]; y++){
+        for(int z = box[o + 2]; z <= box[o + 5]; z++){
+          int v = axis == 0 ? x : axis == 1 ? y : z;
+          slice[v] += count[(x << (BITS * 2)) | (y << BITS) | z];
+        }
+      }
+    }
+    /* Cut after the slice reaching half, leaving both halves non-empty */
+    int lo = box[o + axis];
+    int hi = box[o + axis + 3];
+    int cut = lo;
+    int below = slice[lo];
+    while(cut + 1 < hi && below * 2 < pop[b]){
+      ++cut;
+      below += slice[cut];
+    }
+    System.arraycopy(box, o, box, nb * 6, 6);
+    box[o + axis + 3] = cut;
+    box[nb * 6 + axis] = cut + 1;
+    pop[nb] = pop[b] - below;
+    pop[b] = below;
+    shrink(count, box, b);
+    shrink(count, box, nb);
+  }
+}
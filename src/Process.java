@@ -1,6 +1,7 @@
 package b.img;
 
 import java.io.File;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Process.java
@@ -9,31 +10,32 @@ import java.io.File;
  **/
 public interface Process{
   /**
-   * setFormat()
+   * setInput()
    *
-   * Set the format of the output image.
+   * Set the input image file to be used.
    *
-   * @param format The output format.
+   * @param input The input file to be used.
    **/
-  public void setFormat(Convert.FORMAT format);
+  public void setInput(File input);
 
   /**
    * setInput()
    *
-   * Set the input image file to be used.
+   * Set the encoded input image to be used.
    *
-   * @param input The input file to be used.
+   * @param input The encoded input image data.
    **/
-  public void setInput(File input);
+  public void setInput(byte[] input);
 
   /**
-   * setOutput()
+   * addTarget()
    *
-   * Set the output file to be used for the conversion.
+   * Add an output to be generated from the input. Several targets may be
+   * added, in which case the input is only decoded once.
    *
-   * @param output The output file to be used.
+   * @param target The output to be generated.
    **/
-  public void setOutput(File output);
+  public void addTarget(Target target);
 
   /**
    * setSpeed()
@@ -45,22 +47,88 @@ public interface Process{
   public void setSpeed(Convert.SPEED speed);
 
   /**
-   * setWidth()
+   * setFilter()
+   *
+   * Set the resampling filter to be used, overriding the default for the
+   * speed.
+   *
+   * @param filter The filter to be used, otherwise NULL for the default.
+   **/
+  public void setFilter(Resample.FILTER filter);
+
+  /**
+   * setStrips()
+   *
+   * Set the pool a single conversion may spread its work over, and how many
+   * of its threads have been set aside for it.
+   *
+   * @param pool The pool to run work on, otherwise NULL for the caller only.
+   * @param threads The number of threads of the pool that may be used.
+   **/
+  public void setStrips(ForkJoinPool pool, int threads);
+
+  /**
+   * setInFlight()
+   *
+   * Set how many decoded inputs may be held in memory at once, by this and
+   * every other conversion running alongside it, so that inputs are
+   * streamed when they would not fit in their share of the heap.
+   *
+   * @param inputs The number of decoded inputs held at once.
+   **/
+  public void setInFlight(int inputs);
+
+  /**
+   * setStream()
+   *
+   * Force the input to be decoded a band of rows at a time, which is
+   * otherwise only done for inputs too large to hold in memory.
+   *
+   * @param stream True to always stream the input.
+   **/
+  public void setStream(boolean stream);
+
+  /**
+   * setPalette()
+   *
+   * Fill SVG elements from a palette chosen for each image, sharing a style
+   * class between elements of the same palette colour.
+   *
+   * @param colours The maximum number of colours, otherwise zero for none.
+   **/
+  public void setPalette(int colours);
+
+  /**
+   * setMetric()
    *
-   * Set the desired output width of the conversion.
+   * Set how the distance between colours is measured when growing runs and
+   * regions of similar colour for SVG output.
    *
-   * @param width Set the desired width of the output image.
+   * @param metric The colour distance measure.
    **/
-  public void setWidth(int width);
+  public void setMetric(Distance.METRIC metric);
 
   /**
-   * setHeight()
+   * setMaxBytes()
    *
-   * Set the desired output height of the conversion.
+   * Set a budget of bytes for each output, searching the quality or colour
+   * threshold for the best output within it and shrinking the output when
+   * that is not enough.
    *
-   * @param height Set the desired height of the output image.
+   * @param bytes The maximum bytes per output, otherwise zero for no limit.
    **/
-  public void setHeight(int height);
+  public void setMaxBytes(long bytes);
+
+  /**
+   * isNormalized()
+   *
+   * Check whether the decoded input had to be converted into the layout
+   * the conversion works on.
+   *
+   * @return True if the input was converted after decoding, otherwise
+   * false.
+   **/
+  public boolean isNormalized();
 
   /**
    * isReady()
@@ -72,11 +140,29 @@ public interface Process{
   public boolean isReady();
 
   /**
-   * isComplete()
+   * load()
+   *
+   * Decode the input image. This is the first stage of the conversion.
+   *
+   * @return True if the input was decoded, otherwise false.
+   **/
+  public boolean load();
+
+  /**
+   * convert()
+   *
+   * Perform the conversion on the decoded input. This is the second stage of
+   * the conversion and may only be called after a successful load().
+   **/
+  public void convert();
+
+  /**
+   * save()
    *
-   * Check if the conversion is now complete.
+   * Encode the converted result and write it out. This is the final stage of
+   * the conversion and may only be called after convert().
    *
-   * @return True if complete, otherwise false.
+   * @return True if all of the outputs were written, otherwise false.
    **/
-  public boolean isComplete();
+  public boolean save();
 }
@@ -1,13 +1,29 @@
 package b.img;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.awt.RenderingHints;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 /**
  * ProcessScale.java
@@ -15,153 +31,52 @@ import javax.imageio.ImageIO;
  * Scale an image to a given size.
  **/
 public class ProcessScale implements Process, Runnable{
-  /**
-   * ProcessScale.BitField.java
-   *
-   * Generate a bit field for the purpose of generating compact SVG graphics.
-   **/
-  private class BitField{
-    private int id;
-    private int colour;
-    private boolean[][] mask;
-    private HashSet<Integer> children;
-    private Element elem;
-
-    /**
-     * BitField()
-     *
-     * Generate a bit field from a multi-mask.
-     *
-     * @param multi The multi-mask to search for our bit field.
-     * @param id The ID of this bit field.
-     * @param colour Set the colour of the represented object.
-     **/
-    public BitField(int[][] multi, int id, int colour){
-      /* Store variables and initiate variables */
-      this.id = id;
-      this.colour = colour;
-      this.colour = ((colour & 0x0000F0) >>  4) |
-                    ((colour & 0x00F000) >>  8) |
-                    ((colour & 0xF00000) >> 12);
-      children = new HashSet<Integer>();
-      /* Generate bit field */
-      mask = new boolean[multi.length][];
-      ArrayList<double[]> pts = new ArrayList<double[]>();
-      int globalX1 = multi[0].length;
-      int globalY1 = -1;
-      int globalX2 = -1;
-      int globalY2 = -1;
-      for(int y = 0; y < multi.length; y++){
-        int start = -1;
-        int end = -1;
-        /* Store bit field information */
-        mask[y] = new boolean[multi[y].length];
-        for(int x = 0; x < multi[y].length; x++){
-          /* Update bit mask */
-          mask[y][x] = multi[y][x] == id;
-          /* Store information about shape */
-          if(mask[y][x]){
-            if(start < 0){
-              start = x;
-            }
-            end = x;
-          }
-        }
-        /* Search for children */
-        if(start >= 0){
-          /* Update global measurements */
-          if(start < globalX1){
-            globalX1 = start;
-          }
-          if(globalY1 < 0){
-            globalY1 = y;
-          }
-          if(end > globalX2){
-            globalX2 = end;
-          }
-          globalY2 = y;
-          /* Check whether there are children */
-          for(int x = start; x <= end; x++){
-            if(!mask[y][x]){
-              children.add(multi[y][x]);
-            }
-          }
-        }
-        /* Store polygon points */
-        pts.add(0, new double[]{start, y});
-        pts.add(new double[]{end + 1, y});
-        pts.add(0, new double[]{start, y + 1});
-        pts.add(new double[]{end + 1, y + 1});
-      }
-      int width = globalX2 - globalX1;
-      int height = globalY2 - globalY1;
-      if(width == 0 || height == 0){
-        /* Generate rectangle SVG element */
-        elem = new ElementRect(
-          globalX1,
-          globalY1,
-          width + 1,
-          height + 1,
-          "fill:#" + Integer.toHexString(colour)
-        );
-      }else{
-        /* Generate polygon SVG element */
-        elem = new ElementPoly(
-          pts.toArray(new double[pts.size()][]),
-          "fill:#" + Integer.toHexString(colour)
-        );
-      }
-    }
-
-    /**
-     * getOverlayChildren()
-     *
-     * It's possible that some bit fields overlay this one and they must be
-     * drawn after (on top).
-     *
-     * @return A set of unique children contained within.
-     **/
-    public HashSet<Integer> getOverlayChildren(){
-      return children;
-    }
+  /* The fraction of the heap shared by every decoded input held at once,
+     inputs decoding to more than their share are streamed */
+  private static final int STREAM_FRACTION = 2;
+  /* The number of bytes of decoded pixels in each band when streaming */
+  private static final int STREAM_BAND = 16 * 1024 * 1024;
+  /* The colour distance within which SVG pixels are merged by default */
+  private static final int THRESH = 32;
+  /* The coarsest SVG threshold tried to meet a byte budget */
+  private static final int MAX_THRESH = 128;
+  /* The lowest JPEG quality tried to meet a byte budget, in percent */
+  private static final int MIN_QUALITY = 5;
+  /* The number of times output is shrunk to meet a byte budget */
+  private static final int MAX_SHRINK = 4;
 
-    /**
-     * getElement()
-     *
-     * Get an element that represents the bit field.
-     *
-     * @return The element representing this bit field.
-     **/
-    public Element getElement(){
-      return elem;
-    }
-  }
-
-  private Convert.FORMAT format;
+  private Object source;
   private BufferedImage input;
-  private File output;
+  /* The size given by the input's header, before any subsampling */
+  private int srcWidth;
+  private int srcHeight;
+  private ArrayList<Target> targets = new ArrayList<Target>();
+  private BufferedImage[] imgs;
+  private SVG[] svgs;
   private Convert.SPEED speed;
-  private int width;
-  private int height;
-  private boolean complete = false;
+  private Resample.FILTER filter;
+  private ForkJoinPool pool;
+  private int threads = 1;
+  private int inFlight = 1;
+  private boolean normalized;
+  private boolean stream;
+  private int colours;
+  private Distance.METRIC metric = Distance.METRIC.RGB;
+  private long maxBytes;
 
   @Override
-  public void setFormat(Convert.FORMAT format){
-    this.format = format;
+  public void setInput(File input){
+    this.source = input;
   }
 
   @Override
-  public void setInput(File input){
-    try{
-      this.input = ImageIO.read(input);
-    }catch(IOException e){
-      this.input = null;
-    }
+  public void setInput(byte[] input){
+    this.source = new MemoryCacheImageInputStream(new ByteArrayInputStream(input));
   }
 
   @Override
-  public void setOutput(File output){
-    this.output = output;
+  public void addTarget(Target target){
+    targets.add(target);
   }
 
   @Override
@@ -170,122 +85,661 @@ public class ProcessScale implements Process, Runnable{
   }
 
   @Override
-  public void setWidth(int width){
-    this.width = width;
+  public void setFilter(Resample.FILTER filter){
+    this.filter = filter;
+  }
+
+  @Override
+  public void setStrips(ForkJoinPool pool, int threads){
+    this.pool = pool;
+    this.threads = Math.max(1, threads);
   }
 
   @Override
-  public void setHeight(int height){
-    this.height = height;
+  public void setInFlight(int inputs){
+    this.inFlight = Math.max(1, inputs);
+  }
+
+  @Override
+  public void setStream(boolean stream){
+    this.stream = stream;
+  }
+
+  @Override
+  public void setPalette(int colours){
+    this.colours = colours;
+  }
+
+  @Override
+  public void setMetric(Distance.METRIC metric){
+    this.metric = metric;
+  }
+
+  @Override
+  public void setMaxBytes(long bytes){
+    this.maxBytes = bytes;
+  }
+
+  @Override
+  public boolean isNormalized(){
+    return normalized;
   }
 
   @Override
   public boolean isReady(){
-    /* Make sure format provided */
-    if(format == null){
-      return false;
-    }
-    /* Make sure input loaded */
-    if(input == null){
-      return false;
-    }
-    /* Make sure output is set, but doesn't exist */
-    if(output == null || output.exists()){
+    /* Make sure input given */
+    if(source == null){
       return false;
     }
     /* Make sure speed provided */
     if(speed == null){
       return false;
     }
-    /* Make sure width valid for this mode */
-    if(width < 1){
+    /* Make sure there is something to generate */
+    if(targets.size() < 1){
       return false;
     }
-    /* Make sure height valid for this mode */
-    if(height < 1){
-      return false;
+    for(Target t : targets){
+      /* Make sure format provided */
+      if(t.getFormat() == null){
+        return false;
+      }
+      /* Make sure output doesn't exist, none means kept in memory */
+      if(t.getOutput() != null && t.getOutput().exists() && !t.isReplace()){
+        return false;
+      }
+      /* Make sure width and height valid for this mode */
+      if(t.getWidth() < 1 || t.getHeight() < 1){
+        return false;
+      }
     }
     return true;
   }
 
-  public boolean isComplete(){
-    return complete;
+  /**
+   * load()
+   *
+   * Decode the input image. The header is read first so that when the
+   * target is much smaller than the source, only every n'th pixel is decoded
+   * rather than decoding the full image and throwing most of it away.
+   *
+   * @return True if the input was decoded, otherwise false.
+   **/
+  @Override
+  public boolean load(){
+    input = null;
+    try{
+      ImageInputStream iis = source instanceof ImageInputStream ?
+        (ImageInputStream)source : ImageIO.createImageInputStream(source);
+      if(iis == null){
+        return false;
+      }
+      try{
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+        if(!readers.hasNext()){
+          return false;
+        }
+        ImageReader reader = readers.next();
+        try{
+          /* Bands re-read the same image, so earlier data must be kept */
+          reader.setInput(iis, false, true);
+          ImageReadParam param = reader.getDefaultReadParam();
+          int srcW = reader.getWidth(0);
+          int srcH = reader.getHeight(0);
+          srcWidth = srcW;
+          srcHeight = srcH;
+          int sub = subsample(srcW, srcH);
+          if(sub > 1){
+            param.setSourceSubsampling(sub, sub, 0, 0);
+          }
+          /* Decode straight to packed integers where the reader can */
+          Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+          while(types.hasNext()){
+            ImageTypeSpecifier type = types.next();
+            if(
+              type.getBufferedImageType() == BufferedImage.TYPE_INT_RGB ||
+              type.getBufferedImageType() == BufferedImage.TYPE_INT_ARGB
+            ){
+              param.setDestinationType(type);
+              break;
+            }
+          }
+          long pixels = (long)((srcW + sub - 1) / sub) * ((srcH + sub - 1) / sub);
+          long share = Runtime.getRuntime().maxMemory() / STREAM_FRACTION / inFlight;
+          if(stream || pixels * 4 > share){
+            input = stream(reader, param, srcW, srcH, sub);
+          }else{
+            input = reader.read(0, param);
+            /* Bring every input into the one layout the scaling works on */
+            BufferedImage decoded = input;
+            input = Resample.normalize(decoded);
+            normalized = input != decoded;
+          }
+        }finally{
+          reader.dispose();
+        }
+      }finally{
+        iis.close();
+      }
+    }catch(IOException e){
+      input = null;
+    }
+    return input != null;
   }
 
   /**
-   * run()
+   * stream()
+   *
+   * Decode the input a band of rows at a time, resampling the bands
+   * straight to the largest target as they arrive so that the whole input
+   * is never held in memory.
    *
-   * Perform the conversion.
+   * @param reader The reader, with its input set.
+   * @param param The parameters to read with, subsampling already set.
+   * @param srcW The width of the input.
+   * @param srcH The height of the input.
+   * @param sub The subsampling factor.
+   * @return The input resampled to the largest target.
+   * @throws IOException If the input could not be read.
    **/
-  @Override
-  public void run(){
-    complete = false;
-    /* Calculate best width and height */
-    double widthRatio = (double)width / (double)input.getWidth();
-    double heightRatio = (double)height / (double)input.getHeight();
-    double ratio = Math.min(widthRatio, heightRatio);
-    width = (int)(input.getWidth() * ratio);
-    height = (int)(input.getHeight() * ratio);
-    /* Perform conversion */
-    BufferedImage img = null;
+  private BufferedImage stream(
+    ImageReader reader,
+    ImageReadParam param,
+    int srcW,
+    int srcH,
+    int sub
+  ) throws IOException{
+    int w = (srcW + sub - 1) / sub;
+    int h = (srcH + sub - 1) / sub;
+    /* The largest target fixes the size everything else cascades from */
+    int[] largest = new int[]{0, 0};
+    for(Target t : targets){
+      int[] dim = size(t);
+      if((long)dim[0] * dim[1] > (long)largest[0] * largest[1]){
+        largest = dim;
+      }
+    }
+    Resample.Incremental inc = new Resample.Incremental(
+      w,
+      h,
+      largest[0],
+      largest[1],
+      streamFilter()
+    );
+    /* Bands of a bounded size, whole blocks of the box reduction */
+    int multiple = inc.getRowMultiple();
+    int rows = Math.max(multiple, STREAM_BAND / 4 / w / multiple * multiple);
+    for(int y = 0; y < h; y += rows){
+      int n = Math.min(rows, h - y);
+      param.setSourceRegion(new Rectangle(0, y * sub, srcW, Math.min(n * sub, srcH - y * sub)));
+      inc.push(reader.read(0, param));
+    }
+    normalized = inc.isNormalized();
+    return inc.finish();
+  }
+
+  /**
+   * streamFilter()
+   *
+   * Get the filter for resampling whilst streaming, matching the filter
+   * the speed would otherwise use.
+   *
+   * @return The filter to be used.
+   **/
+  private Resample.FILTER streamFilter(){
+    if(filter != null){
+      return filter;
+    }
     switch(speed){
       case FAST :
-        img = processFast(input, width, height);
-        break;
-      case NORMAL :
-        img = processNormal(input, width, height);
-        break;
+        return Resample.FILTER.BOX;
       case SLOW :
-        img = processSlow(input, width, height);
+        return Resample.FILTER.LANCZOS3;
+      default :
+        return Resample.FILTER.MITCHELL;
+    }
+  }
+
+  /**
+   * subsample()
+   *
+   * Calculate how many source pixels may be skipped in each direction whilst
+   * decoding. Slower speeds keep more pixels than the target needs so that
+   * the scaling has something to average over.
+   *
+   * @param srcWidth The width of the source image.
+   * @param srcHeight The height of the source image.
+   * @return The subsampling factor, one meaning every pixel is decoded.
+   **/
+  private int subsample(int srcWidth, int srcHeight){
+    int margin;
+    switch(speed){
+      case FAST :
+      case NORMAL :
+        margin = 2;
         break;
       default :
-        System.err.println("(internal) Unsupported speed for conversion.");
+        margin = 4;
         break;
     }
-    /* Save the image */
-    switch(format){
+    /* The largest target decides how much detail must be kept */
+    double reduce = Double.MAX_VALUE;
+    for(Target t : targets){
+      reduce = Math.min(reduce, Math.max(
+        (double)srcWidth / (double)t.getWidth(),
+        (double)srcHeight / (double)t.getHeight()
+      ));
+    }
+    return Math.max(1, (int)(reduce / margin));
+  }
+
+  /**
+   * size()
+   *
+   * Calculate the best width and height for a target from the size of the
+   * input in its header, as subsampling rounds the decoded size and would
+   * otherwise skew the aspect ratio.
+   *
+   * @param t The target.
+   * @return The width and height.
+   **/
+  private int[] size(Target t){
+    double widthRatio = (double)t.getWidth() / (double)srcWidth;
+    double heightRatio = (double)t.getHeight() / (double)srcHeight;
+    double ratio = Math.min(widthRatio, heightRatio);
+    return new int[]{
+      Math.max(1, (int)(srcWidth * ratio)),
+      Math.max(1, (int)(srcHeight * ratio))
+    };
+  }
+
+  /**
+   * convert()
+   *
+   * Scale the input for each of the targets. The targets are visited from
+   * largest to smallest, where each level is scaled from the previous one
+   * rather than the input when it is large enough to do so.
+   **/
+  @Override
+  public void convert(){
+    imgs = new BufferedImage[targets.size()];
+    svgs = new SVG[targets.size()];
+    /* Calculate best width and height for each target */
+    int[][] dims = new int[targets.size()][];
+    Integer[] order = new Integer[targets.size()];
+    for(int x = 0; x < targets.size(); x++){
+      dims[x] = size(targets.get(x));
+      order[x] = x;
+    }
+    Arrays.sort(order, (i, j) -> Long.compare(
+      (long)dims[j][0] * dims[j][1],
+      (long)dims[i][0] * dims[i][1]
+    ));
+    /* Cascade from the largest to the smallest */
+    BufferedImage prev = input;
+    for(int x = 0; x < order.length; x++){
+      int i = order[x];
+      int width = dims[i][0];
+      int height = dims[i][1];
+      /* Reuse a previous level that is the same or large enough */
+      BufferedImage img = null;
+      BufferedImage src = input;
+      if(prev.getWidth() == width && prev.getHeight() == height){
+        img = prev;
+      }else if(prev.getWidth() >= width && prev.getHeight() >= height){
+        src = prev;
+      }
+      /* Perform conversion */
+      if(img == null){
+        img = scale(src, width, height);
+      }
+      imgs[i] = img;
+      prev = img;
+      /* Perform scalar sampling, left to the encoder when on a budget */
+      if(targets.get(i).getFormat() == Convert.FORMAT.SVG){
+        System.out.println("(warning) SVG scaling support is experimental.");
+        if(maxBytes <= 0){
+          svgs[i] = svg(img, THRESH);
+        }
+      }
+    }
+    /* Release the source as early as possible */
+    input = null;
+  }
+
+  /**
+   * save()
+   *
+   * Encode each of the targets in memory and then write those with an
+   * output file to disk, the others keep the encoded data.
+   *
+   * @return True if all of the outputs were written, otherwise false.
+   **/
+  @Override
+  public boolean save(){
+    boolean ok = true;
+    for(int x = 0; x < targets.size(); x++){
+      Target t = targets.get(x);
+      byte[] data = encode(x);
+      if(data == null){
+        ok = false;
+      }else if(t.getOutput() == null){
+        t.setData(data);
+      }else{
+        try{
+          if(t.isReplace()){
+            /* Keep the old output until the new one is whole */
+            File tmp = new File(t.getOutput().getPath() + ".tmp");
+            try{
+              Files.write(tmp.toPath(), data);
+              Files.move(
+                tmp.toPath(),
+                t.getOutput().toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+              );
+            }finally{
+              tmp.delete();
+            }
+          }else{
+            Files.write(t.getOutput().toPath(), data);
+          }
+        }catch(IOException e){
+          System.err.println("(internal) Unable to write image to disk.");
+          ok = false;
+        }
+      }
+    }
+    imgs = null;
+    svgs = null;
+    return ok;
+  }
+
+  /**
+   * encode()
+   *
+   * Encode the result for a target.
+   *
+   * @param x The index of the target.
+   * @return The encoded data, otherwise NULL on failure.
+   **/
+  private byte[] encode(int x){
+    Target t = targets.get(x);
+    if(maxBytes > 0){
+      return fit(t.getFormat(), imgs[x]);
+    }
+    switch(t.getFormat()){
       case PNG :
       case JPEG :
         try{
-          ImageIO.write(img, format.getType(), output);
+          BufferedImage img = imgs[x];
+          if(t.getFormat() == Convert.FORMAT.JPEG && img.getColorModel().hasAlpha()){
+            img = flatten(img);
+          }
+          ByteArrayOutputStream baos = Scratch.stream();
+          if(!ImageIO.write(img, t.getFormat().getType(), baos)){
+            System.err.println("(internal) No writer for image format.");
+            return null;
+          }
+          return baos.toByteArray();
         }catch(IOException e){
-          System.err.println("(internal) Unable to write image to disk.");
+          System.err.println("(internal) Unable to encode image.");
+          return null;
         }
+      case SVG :
+        /* Only if it was generated successfully */
+        return svgs[x] != null ? svgs[x].toBytes() : null;
+      default :
+        System.err.println("(internal) Unsupported format during save.");
+        return null;
+    }
+  }
+
+  /**
+   * fit()
+   *
+   * Encode an image within the byte budget at the best quality found. The
+   * coarsest setting is tried first, and if it fits, the finest setting that
+   * still fits is searched for. Otherwise the image is shrunk by about the
+   * excess and tried again. Every attempt is kept in memory.
+   *
+   * @param f The format to encode to.
+   * @param img The image.
+   * @return The encoded data, otherwise NULL on failure.
+   **/
+  private byte[] fit(Convert.FORMAT f, BufferedImage img){
+    if(f == Convert.FORMAT.JPEG && img.getColorModel().hasAlpha()){
+      img = flatten(img);
+    }
+    byte[] data = null;
+    for(int n = 0; n <= MAX_SHRINK; n++){
+      int hi = steps(f);
+      data = attempt(f, img, hi);
+      if(data == null){
+        return null;
+      }
+      if(data.length <= maxBytes){
+        /* Search for the finest step that fits, keeping the last that did */
+        int lo = 0;
+        while(lo < hi){
+          int mid = (lo + hi) / 2;
+          byte[] d = attempt(f, img, mid);
+          if(d == null){
+            return null;
+          }
+          if(d.length <= maxBytes){
+            hi = mid;
+            data = d;
+          }else{
+            lo = mid + 1;
+          }
+        }
+        return data;
+      }
+      /* Bytes go roughly with the number of pixels */
+      double ratio = Math.min(0.9, Math.sqrt((double)maxBytes / data.length));
+      int width = Math.max(1, (int)(img.getWidth() * ratio));
+      int height = Math.max(1, (int)(img.getHeight() * ratio));
+      if(width == img.getWidth() && height == img.getHeight()){
         break;
+      }
+      img = scale(img, width, height);
+    }
+    System.out.println("(warning) Unable to fit output within " + maxBytes + " bytes.");
+    return data;
+  }
+
+  /**
+   * steps()
+   *
+   * Get the coarsest step an output format can be encoded at.
+   *
+   * @param f The format.
+   * @return The coarsest step, zero being the finest.
+   **/
+  private int steps(Convert.FORMAT f){
+    switch(f){
+      case JPEG :
+        return 100 - MIN_QUALITY;
       case SVG :
-        System.out.println("(warning) SVG scaling support is experimental.");
-        /* Perform scalar sampling */
-        SVG svg = null;
-        switch(speed){
-          case FAST :
-            svg = svgFast(img, width, height);
-            break;
-          case NORMAL :
-            svg = svgNormal(img, width, height);
-            break;
-          case SLOW :
-            svg = svgSlow(img, width, height);
-            break;
-          default :
-            System.err.println("(internal) Unsupported speed for SVG conversion.");
-            break;
+        return speed == Convert.SPEED.FAST ? 0 : MAX_THRESH;
+      default :
+        return 0;
+    }
+  }
+
+  /**
+   * attempt()
+   *
+   * Encode an image at a given step, where higher steps give fewer bytes at
+   * a lower quality. For JPEG a step takes a percent off the quality, for
+   * SVG it is the threshold for merging colours.
+   *
+   * @param f The format to encode to.
+   * @param img The image, without alpha for JPEG.
+   * @param step The step.
+   * @return The encoded data, otherwise NULL on failure.
+   **/
+  private byte[] attempt(Convert.FORMAT f, BufferedImage img, int step){
+    switch(f){
+      case PNG :
+        try{
+          ByteArrayOutputStream baos = Scratch.stream();
+          if(!ImageIO.write(img, f.getType(), baos)){
+            System.err.println("(internal) No writer for image format.");
+            return null;
+          }
+          return baos.toByteArray();
+        }catch(IOException e){
+          System.err.println("(internal) Unable to encode image.");
+          return null;
         }
-        /* Save if it was generated successfully */
-        if(svg != null){
-          svg.save(output);
+      case JPEG :
+        try{
+          return jpeg(img, (100 - step) / 100.0f);
+        }catch(IOException e){
+          System.err.println("(internal) Unable to encode image.");
+          return null;
         }
-        break;
+      case SVG :
+        SVG svg = svg(img, step);
+        return svg != null ? svg.toBytes() : null;
       default :
         System.err.println("(internal) Unsupported format during save.");
-        break;
+        return null;
+    }
+  }
+
+  /**
+   * jpeg()
+   *
+   * Encode an image as JPEG at a given quality.
+   *
+   * @param img The image, without alpha.
+   * @param quality The quality, from zero to one.
+   * @return The encoded data.
+   * @throws IOException If the image could not be encoded.
+   **/
+  private static byte[] jpeg(BufferedImage img, float quality) throws IOException{
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+    if(!writers.hasNext()){
+      throw new IOException("No JPEG writer");
+    }
+    ImageWriter writer = writers.next();
+    ByteArrayOutputStream baos = Scratch.stream();
+    try{
+      ImageOutputStream ios = ImageIO.createImageOutputStream(baos);
+      try{
+        writer.setOutput(ios);
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        writer.write(null, new IIOImage(img, null, null), param);
+      }finally{
+        ios.close();
+      }
+    }finally{
+      writer.dispose();
+    }
+    return baos.toByteArray();
+  }
+
+  /**
+   * flatten()
+   *
+   * Draw an image with alpha over a white background, for formats that
+   * cannot store alpha.
+   *
+   * @param img The image with alpha.
+   * @return The opaque image.
+   **/
+  private static BufferedImage flatten(BufferedImage img){
+    BufferedImage out = new BufferedImage(
+      img.getWidth(),
+      img.getHeight(),
+      BufferedImage.TYPE_INT_RGB
+    );
+    Graphics2D g = out.createGraphics();
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, img.getWidth(), img.getHeight());
+    g.drawImage(img, 0, 0, null);
+    g.dispose();
+    return out;
+  }
+
+  /**
+   * run()
+   *
+   * Perform the entire conversion on the calling thread.
+   **/
+  @Override
+  public void run(){
+    if(load()){
+      convert();
+      save();
+    }
+  }
+
+  /**
+   * scale()
+   *
+   * Scale an image with the method suiting the speed.
+   *
+   * @param input The input image.
+   * @param width The width of the target image.
+   * @param height The height of the target image.
+   * @return The processed image.
+   **/
+  private BufferedImage scale(BufferedImage input, int width, int height){
+    switch(speed){
+      case FAST :
+        return processFast(input, width, height);
+      case NORMAL :
+        return processNormal(input, width, height);
+      case SLOW :
+        return processSlow(input, width, height);
+      default :
+        System.err.println("(internal) Unsupported speed for conversion.");
+        return null;
+    }
+  }
+
+  /**
+   * svg()
+   *
+   * Convert an image to scalar SVG format with the method suiting the speed,
+   * from a palette if one was requested.
+   *
+   * @param img The image at the target size.
+   * @param thresh The colour distance within which pixels are merged.
+   * @return The processed image.
+   **/
+  private SVG svg(BufferedImage img, int thresh){
+    int width = img.getWidth();
+    int height = img.getHeight();
+    Palette pal = null;
+    if(colours > 0){
+      int[] px = img.getRGB(0, 0, width, height, null, 0, width);
+      pal = new Palette(px, px.length, colours);
+    }
+    switch(speed){
+      case FAST :
+        return svgFast(img, width, height, pal);
+      case NORMAL :
+        return svgNormal(img, width, height, pal, thresh);
+      case SLOW :
+        return svgSlow(img, width, height, pal, thresh);
+      default :
+        System.err.println("(internal) Unsupported speed for SVG conversion.");
+        return null;
     }
-    complete = true;
   }
 
   /**
    * processFast()
    *
-   * Perform a fast conversion and care little for quality.
+   * Perform a fast conversion and care little for quality, averaging whole
+   * blocks of pixels.
    *
    * @param input The input image.
    * @param width The width of the target image.
@@ -293,17 +747,14 @@ public class ProcessScale implements Process, Runnable{
    * @return The processed image.
    **/
   private BufferedImage processFast(BufferedImage input, int width, int height){
-    BufferedImage i = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-    Graphics2D g = i.createGraphics();
-    g.drawImage(input, 0, 0, width, height, null);
-    g.dispose();
-    return i;
+    return Resample.area(input, width, height);
   }
 
   /**
    * processNormal()
    *
-   * Perform a normal conversion using rendering hints.
+   * Perform a normal conversion using a separable filter, by default a
+   * Mitchell filter.
    *
    * @param input The input image.
    * @param width The width of the target image.
@@ -311,20 +762,21 @@ public class ProcessScale implements Process, Runnable{
    * @return The processed image.
    **/
   private BufferedImage processNormal(BufferedImage input, int width, int height){
-    BufferedImage i = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-    Graphics2D g = i.createGraphics();
-    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-    g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    g.drawImage(input, 0, 0, width, height, null);
-    g.dispose();
-    return i;
+    return Resample.scale(
+      input,
+      width,
+      height,
+      filter != null ? filter : Resample.FILTER.MITCHELL,
+      pool,
+      threads
+    );
   }
 
   /**
    * processSlow()
    *
-   * Perform a slow conversion using progressive scaling.
+   * Perform a slow conversion using a separable filter, by default the
+   * higher quality Lanczos filter.
    *
    * @param input The input image.
    * @param width The width of the target image.
@@ -332,15 +784,14 @@ public class ProcessScale implements Process, Runnable{
    * @return The processed image.
    **/
   private BufferedImage processSlow(BufferedImage input, int width, int height){
-    BufferedImage i = input;
-    int w = input.getWidth() / 2;
-    int h = input.getHeight() / 2;
-    while(w > width && h > height){
-      i = processNormal(i, w, h);
-      w = w / 2;
-      h = h / 2;
-    }
-    return processNormal(i, width, height);
+    return Resample.scale(
+      input,
+      width,
+      height,
+      filter != null ? filter : Resample.FILTER.LANCZOS3,
+      pool,
+      threads
+    );
   }
 
   /**
@@ -351,25 +802,19 @@ public class ProcessScale implements Process, Runnable{
    * @param input The input image.
    * @param width The width of the target image.
    * @param height The height of the target image.
+   * @param pal The palette to fill elements from, otherwise NULL.
    * @return The processed image.
    **/
-  private SVG svgFast(BufferedImage input, int width, int height){
-    SVG svg = new SVG(width, height);
+  private SVG svgFast(BufferedImage input, int width, int height, Palette pal){
+    SVG svg = new SVG(width, height, pal);
     for(int y = 0; y < height; y++){
       for(int x = 0; x < width; x++){
         int c = input.getRGB(x, y) & 0xFFFFFF;
-        c = ((c & 0x0000F0) >>  4) |
-            ((c & 0x00F000) >>  8) |
-            ((c & 0xF00000) >> 12);
-        svg.addElement(
-          new ElementRect(
-            x,
-            y,
-            1,
-            1,
-            "fill:#" + Integer.toHexString(c)
-          )
-        );
+        /* Without a palette, keep four bits per channel for short colours */
+        if(pal == null){
+          c = (c & 0xF0F0F0) | ((c & 0xF0F0F0) >> 4);
+        }
+        svg.addElement(new ElementRect(x, y, 1, 1), c);
       }
     }
     return svg;
@@ -383,35 +828,100 @@ public class ProcessScale implements Process, Runnable{
    * @param input The input image.
    * @param width The width of the target image.
    * @param height The height of the target image.
+   * @param pal The palette to fill elements from, otherwise NULL.
+   * @param thresh The colour distance within which pixels are merged.
    * @return The processed image.
    **/
-  private SVG svgNormal(BufferedImage input, int width, int height){
-    final int thresh = 32;
-    SVG svg = new SVG(width, height);
+  private SVG svgNormal(BufferedImage input, int width, int height, Palette pal, int thresh){
+    final int limit = metric.limit(thresh);
+    /* Rectangles grow downwards while every pixel stays well within it */
+    final int drift = metric.limit(thresh * 3 / 8);
+    int[] px = input.getRGB(0, 0, width, height, null, 0, width);
+    SVG svg = new SVG(width, height, pal);
+    /* Rectangles open at the last row, by the column they start in */
+    int[] openW = new int[width];
+    int[] openH = new int[width];
+    int[] openSeed = new int[width];
+    /* Channel sums of each open rectangle, red, green then blue */
+    long[] openSum = new long[width * 3];
+    int[] seen = new int[width];
+    IntList open = new IntList();
+    IntList next = new IntList();
     for(int y = 0; y < height; y++){
+      int row = y * width;
+      next.clear();
       for(int x = 0; x < width; x++){
-        int c = input.getRGB(x, y) & 0xFFFFFF;
-        int a = c;
-        int w = 1;
-        while(w + x < width && dist(c, input.getRGB(x + w, y) & 0xFFFFFF) < thresh){
-          a = avg(a, w, input.getRGB(x + w, y) & 0xFFFFFF);
-          ++w;
+        int w = openW[x];
+        if(w > 0 && metric.run(px, row + x, row + x + w, openSeed[x], drift) == row + x + w){
+          /* Extend the rectangle above, every pixel being close to it */
+          for(int k = 0; k < w; k++){
+            int p = px[row + x + k];
+            openSum[x * 3    ] += (p >> 16) & 0xFF;
+            openSum[x * 3 + 1] += (p >>  8) & 0xFF;
+            openSum[x * 3 + 2] += (p      ) & 0xFF;
+          }
+          ++openH[x];
+        }else{
+          int c = px[row + x] & 0xFFFFFF;
+          int a = c;
+          /* Find the run of similar pixels, then average it in order */
+          w = metric.run(px, row + x + 1, row + width, c, limit) - row - x;
+          for(int k = 1; k < w; k++){
+            a = avg(a, k, px[row + x + k] & 0xFFFFFF);
+          }
+          if(openW[x] > 0){
+            rect(svg, x, y - openH[x], openW[x], openH[x], openSum);
+          }
+          openW[x] = w;
+          openH[x] = 1;
+          openSeed[x] = a;
+          openSum[x * 3    ] = ((a >> 16) & 0xFF) * (long)w;
+          openSum[x * 3 + 1] = ((a >>  8) & 0xFF) * (long)w;
+          openSum[x * 3 + 2] = ((a      ) & 0xFF) * (long)w;
         }
-        svg.addElement(
-          new ElementRect(
-            x,
-            y,
-            w,
-            1,
-            "fill:#" + Integer.toHexString(a)
-          )
-        );
+        seen[x] = y + 1;
+        next.add(x);
         x += w - 1;
       }
+      /* Close the rectangles that didn't continue into this row */
+      for(int i = 0; i < open.size(); i++){
+        int x = open.get(i);
+        if(seen[x] != y + 1){
+          rect(svg, x, y - openH[x], openW[x], openH[x], openSum);
+          openW[x] = 0;
+        }
+      }
+      IntList t = open;
+      open = next;
+      next = t;
+    }
+    for(int i = 0; i < open.size(); i++){
+      int x = open.get(i);
+      rect(svg, x, height - openH[x], openW[x], openH[x], openSum);
     }
     return svg;
   }
 
+  /**
+   * rect()
+   *
+   * Add a rectangle to an SVG, filled with the mean of its pixels.
+   *
+   * @param svg The SVG to be added to.
+   * @param x The left of the rectangle.
+   * @param y The top of the rectangle.
+   * @param w The width of the rectangle.
+   * @param h The height of the rectangle.
+   * @param sum The channel sums by column, red, green then blue.
+   **/
+  private static void rect(SVG svg, int x, int y, int w, int h, long[] sum){
+    long n = (long)w * h;
+    int c = (int)(sum[x * 3    ] / n) << 16 |
+            (int)(sum[x * 3 + 1] / n) <<  8 |
+            (int)(sum[x * 3 + 2] / n);
+    svg.addElement(new ElementRect(x, y, w, h), c);
+  }
+
   /**
    * svgSlow()
    *
@@ -420,100 +930,128 @@ public class ProcessScale implements Process, Runnable{
    * @param input The input image.
    * @param width The width of the target image.
    * @param height The height of the target image.
+   * @param pal The palette to fill elements from, otherwise NULL.
+   * @param thresh The colour distance within which pixels are merged.
    * @return The processed image.
    **/
-  private SVG svgSlow(BufferedImage input, int width, int height){
-    final int thresh = 32;
-    /* Perform blocking */
-    int block[][] = new int[height][];
+  private SVG svgSlow(BufferedImage input, int width, int height, Palette pal, int thresh){
+    final int limit = metric.limit(thresh);
+    int[] px = input.getRGB(0, 0, width, height, null, 0, width);
+    /* Label regions, each label starting out as its own set */
+    int[] label = new int[width * height];
+    int[] parent = new int[width * height];
+    byte[] rank = new byte[width * height];
+    int[] col = new int[width * height];
     int count = 0;
-    ArrayList<Integer> col = new ArrayList<Integer>();
-    ArrayList<int[]> merge = new ArrayList<int[]>();
     for(int y = 0; y < height; y++){
-      block[y] = new int[width];
+      int row = y * width;
       for(int x = 0; x < width; x++){
-        int c = input.getRGB(x, y) & 0xFFFFFF;
-        /* Up check */
-        if(
-          y > 0 &&
-          dist(c, input.getRGB(x, y - 1) & 0xFFFFFF) < thresh &&
-          dist(c, col.get(block[y - 1][x])) < thresh
-        ){
-          block[y][x] = block[y - 1][x];
-          /* Is merge required? */
+        int i = row + x;
+        int c = px[i] & 0xFFFFFF;
+        /* Compare against the neighbour and its region's colour */
+        int up = -1;
+        if(y > 0){
+          int r = find(parent, label[i - width]);
+          if(
+            metric.dist(c, px[i - width]) < limit &&
+            metric.dist(c, col[r]) < limit
+          ){
+            up = r;
+          }
+        }
+        int left = -1;
+        if(x > 0){
+          int r = find(parent, label[i - 1]);
           if(
-            x > 0 &&
-            dist(c, input.getRGB(x - 1, y) & 0xFFFFFF) < thresh &&
-            dist(c, col.get(block[y][x - 1])) < thresh
+            metric.dist(c, px[i - 1]) < limit &&
+            metric.dist(c, col[r]) < limit
           ){
-            /* Dominant (to replace), weak (to be replaced) */
-            merge.add(new int[]{block[y][x], block[y][x - 1]});
+            left = r;
           }
-        /* Left check */
-        }else if(
-          x > 0 &&
-          dist(c, input.getRGB(x - 1, y) & 0xFFFFFF) < thresh &&
-          dist(c, col.get(block[y][x - 1])) < thresh
-        ){
-          block[y][x] = block[y][x - 1];
-        /* Default */
+        }
+        if(up >= 0){
+          /* Join above, merging the left region into it where similar */
+          label[i] = up;
+          if(left >= 0 && left != up){
+            union(parent, rank, col, up, left);
+          }
+        }else if(left >= 0){
+          label[i] = left;
         }else{
-          block[y][x] = count;
-          col.add(c);
+          label[i] = count;
+          parent[count] = count;
+          col[count] = c;
           ++count;
         }
       }
     }
-    /* Perform merging */
-    HashSet<Integer> uniqueIds = new HashSet<Integer>();
-    for(int y = 0; y < height; y++){
-      for(int x = 0; x < width; x++){
-        /* Merge count blocks */
-        for(int i = 0; i < merge.size(); i++){
-          if(block[y][x] == merge.get(i)[1]){
-            block[y][x] = merge.get(i)[0];
-            break;
-          }
-        }
-        uniqueIds.add(block[y][x]);
+    /* Number the regions densely and flatten labels to them */
+    int[] region = new int[count];
+    int regions = 0;
+    for(int i = 0; i < count; i++){
+      if(parent[i] == i){
+        col[regions] = col[i];
+        region[i] = regions++;
       }
     }
-    /* Generate bit fields */
-    BitField[] bf = new BitField[uniqueIds.size()];
-    int bfCount = 0;
-    for(Integer i : uniqueIds){
-      bf[bfCount] = new BitField(block, i, col.get(i));
-      bfCount++;
+    for(int i = 0; i < label.length; i++){
+      label[i] = region[find(parent, label[i])];
     }
-    /* TODO: Generate SVG based on layer order. */
-    SVG svg = new SVG(width, height);
-    for(int x = 0; x < bf.length; x++){
-      svg.addElement(bf[x].getElement());
+    Regions reg = new Regions(label, width, height, regions, col);
+    /* Paint each region's hull before the regions lying within it */
+    SVG svg = new SVG(width, height, pal);
+    for(int r : reg.layers()){
+      svg.addElement(reg.getElement(r), reg.getColour(r));
     }
     return svg;
   }
 
   /**
-   * dist()
+   * find()
    *
-   * Calculate the distance between two RGB pixels.
+   * Find the region a label belongs to, compressing the path taken so that
+   * later searches are direct.
    *
-   * @param i The first pixel.
-   * @param j The second pixel.
-   * @return The distance between the pixels.
+   * @param parent The parent of each label, a region being its own parent.
+   * @param i The label to search from.
+   * @return The label of the region.
    **/
-  private double dist(int i, int j){
-    double ir = (i >> 16) & 0xFF;
-    double ig = (i >>  8) & 0xFF;
-    double ib = (i      ) & 0xFF;
-    double jr = (j >> 16) & 0xFF;
-    double jg = (j >>  8) & 0xFF;
-    double jb = (j      ) & 0xFF;
-    return Math.sqrt(
-      Math.pow(ir - jr, 2) +
-      Math.pow(ig - jg, 2) +
-      Math.pow(ib - jb, 2)
-    );
+  private static int find(int[] parent, int i){
+    int r = i;
+    while(parent[r] != r){
+      r = parent[r];
+    }
+    while(parent[i] != r){
+      int next = parent[i];
+      parent[i] = r;
+      i = next;
+    }
+    return r;
+  }
+
+  /**
+   * union()
+   *
+   * Merge two regions, attaching the shallower tree beneath the deeper. The
+   * merged region keeps the colour of the dominant one.
+   *
+   * @param parent The parent of each label.
+   * @param rank The depth bound of each region's tree.
+   * @param col The colour of each region.
+   * @param dominant The region whose colour is kept.
+   * @param weak The region to be merged in.
+   **/
+  private static void union(int[] parent, byte[] rank, int[] col, int dominant, int weak){
+    int root = dominant;
+    int child = weak;
+    if(rank[dominant] < rank[weak]){
+      root = weak;
+      child = dominant;
+    }else if(rank[dominant] == rank[weak]){
+      ++rank[dominant];
+    }
+    parent[child] = root;
+    col[root] = col[dominant];
   }
 
   /**
@@ -0,0 +1,429 @@
+package b.img;
+
+import java.util.Arrays;
+
+/**
+ * Regions.java
+ *
+ * The regions of a label map, for the purpose of generating compact SVG
+ * graphics. Everything about the regions is gathered from whole passes over
+ * the map, rather than a scan of the rows of each region in turn, so that no
+ * pixel is visited again for every region around it.
+ *
+ * Each region keeps its bounding box, the extent of each of its rows and
+ * the regions lying within those extents, which must be drawn on top of it.
+ * A region is connected, so it has pixels on every row of its bounding box.
+ *
+ * A region is drawn by following the edges between its pixels and the rest
+ * of the image, which gives its outline and those of any holes in it with a
+ * point only where the outline turns. Once layered, a region may instead be
+ * drawn as its span hull, filling the extent of each of its rows, and the
+ * regions within it painted over it afterwards.
+ **/
+public class Regions{
+  /* Edge directions, keeping the region on the right */
+  private static final int RIGHT = 0;
+  private static final int DOWN = 1;
+  private static final int LEFT = 2;
+  private static final int UP = 3;
+
+  private int width;
+  private int height;
+  private int[] label;
+  private int count;
+  private int[] colour;
+  private int[] minX;
+  private int[] minY;
+  private int[] maxX;
+  private int[] maxY;
+  /* The rows of each region, held together from this offset */
+  private int[] rowOff;
+  private int[] starts;
+  private int[] ends;
+  private IntSet[] children;
+  /* Whether each region is drawn to its exact outline, else its span hull */
+  private boolean[] exact;
+  /* The edges of each region, held together from this offset, each as a
+     starting corner and a direction, found once for every region */
+  private int[] edgeOff;
+  private int[] edgeAt;
+  private int[] edgeDir;
+  /* The first edge leaving each pixel corner, only set while tracing */
+  private int[] head;
+
+  /**
+   * Regions()
+   *
+   * Gather the regions of a label map.
+   *
+   * @param label The region of each pixel, row by row, numbered from zero.
+   * @param width The width of the map.
+   * @param height The height of the map.
+   * @param count The number of regions.
+   * @param colour The colour of each region.
+   **/
+  public Regions(int[] label, int width, int height, int count, int[] colour){
+    this.width = width;
+    this.height = height;
+    this.label = label;
+    this.count = count;
+    this.colour = colour;
+    /* Find the bounding boxes */
+    minX = new int[count];
+    minY = new int[count];
+    maxX = new int[count];
+    maxY = new int[count];
+    Arrays.fill(minX, width);
+    Arrays.fill(minY, -1);
+    Arrays.fill(maxX, -1);
+    for(int y = 0; y < height; y++){
+      int row = y * width;
+      for(int x = 0; x < width; x++){
+        int r = label[row + x];
+        if(minY[r] < 0){
+          minY[r] = y;
+        }
+        maxY[r] = y;
+        if(x < minX[r]){
+          minX[r] = x;
+        }
+        if(x > maxX[r]){
+          maxX[r] = x;
+        }
+      }
+    }
+    /* Find the extent of each row, at most one per pixel in total */
+    rowOff = new int[count + 1];
+    for(int r = 0; r < count; r++){
+      rowOff[r + 1] = rowOff[r] + maxY[r] - minY[r] + 1;
+    }
+    starts = new int[rowOff[count]];
+    ends = new int[rowOff[count]];
+    Arrays.fill(starts, -1);
+    for(int y = 0; y < height; y++){
+      int row = y * width;
+      for(int x = 0; x < width; x++){
+        int r = label[row + x];
+        int j = rowOff[r] + y - minY[r];
+        if(starts[j] < 0){
+          starts[j] = x;
+        }
+        ends[j] = x;
+      }
+    }
+    /* Find the regions within each row's extent, sweeping each row's runs
+       past the extents that have started and not yet ended */
+    children = new IntSet[count];
+    for(int r = 0; r < count; r++){
+      children[r] = new IntSet();
+    }
+    int[] open = new int[count];
+    for(int y = 0; y < height; y++){
+      int row = y * width;
+      int n = 0;
+      for(int x = 0; x < width;){
+        int q = label[row + x];
+        int x1 = x + 1;
+        while(x1 < width && label[row + x1] == q){
+          ++x1;
+        }
+        /* Drop extents ended before this run, adding it to the rest */
+        int k = 0;
+        for(int o = 0; o < n; o++){
+          int r = open[o];
+          if(ends[rowOff[r] + y - minY[r]] >= x){
+            if(r != q){
+              children[r].add(q);
+            }
+            open[k++] = r;
+          }
+        }
+        n = k;
+        if(starts[rowOff[q] + y - minY[q]] == x && ends[rowOff[q] + y - minY[q]] >= x1){
+          open[n++] = q;
+        }
+        x = x1;
+      }
+    }
+    /* Until layered, any order of exact outlines draws the map */
+    exact = new boolean[count];
+    Arrays.fill(exact, true);
+  }
+
+  /**
+   * getColour()
+   *
+   * Get the colour of a region.
+   *
+   * @param r The region.
+   * @return The RGB colour.
+   **/
+  public int getColour(int r){
+    return colour[r];
+  }
+
+  /**
+   * layers()
+   *
+   * Order the regions so that each is drawn before the regions within it,
+   * letting it be drawn as its span hull. Regions that lie within each other
+   * cannot both come first, so while no region is free to be drawn, the one
+   * with the fewest children is drawn to its exact outline instead, which
+   * needs no region after it.
+   *
+   * @return The regions in the order they are to be drawn.
+   **/
+  public int[] layers(){
+    int[][] kids = new int[count][];
+    int[] indeg = new int[count];
+    long[] cheap = new long[count];
+    for(int r = 0; r < count; r++){
+      kids[r] = children[r].toArray();
+      cheap[r] = ((long)kids[r].length << 32) | r;
+      /* Rows that don't overlap would give a hull with crossing edges */
+      exact[r] = false;
+      for(int j = rowOff[r] + 1; j < rowOff[r + 1] && !exact[r]; j++){
+        exact[r] = starts[j] > ends[j - 1] || ends[j] < starts[j - 1];
+      }
+      if(!exact[r]){
+        for(int c : kids[r]){
+          ++indeg[c];
+        }
+      }
+    }
+    Arrays.sort(cheap);
+    /* The order doubles as the queue of regions free to be drawn */
+    int[] order = new int[count];
+    int free = 0;
+    for(int r = 0; r < count; r++){
+      if(indeg[r] == 0){
+        order[free++] = r;
+      }
+    }
+    int next = 0;
+    for(int done = 0; done < count;){
+      if(done < free){
+        int r = order[done++];
+        if(!exact[r]){
+          for(int c : kids[r]){
+            if(--indeg[c] == 0){
+              order[free++] = c;
+            }
+          }
+        }
+        continue;
+      }
+      /* Every region left lies within another, break the cycle */
+      int r = (int)cheap[next++];
+      if(indeg[r] > 0 && !exact[r] && kids[r].length > 0){
+        exact[r] = true;
+        for(int c : kids[r]){
+          if(--indeg[c] == 0){
+            order[free++] = c;
+          }
+        }
+      }
+    }
+    return order;
+  }
+
+  /**
+   * getElement()
+   *
+   * Get an unfilled element that represents a region, covering whatever is
+   * to be drawn over it once layered.
+   *
+   * @param r The region.
+   * @return The element representing the region.
+   **/
+  public Element getElement(int r){
+    IntList xy = new IntList();
+    IntList loops = new IntList();
+    if(exact[r]){
+      trace(r, xy, loops);
+    }else{
+      hull(r, xy);
+      loops.add(xy.size());
+    }
+    if(loops.size() == 1 && xy.size() == 8){
+      /* Generate rectangle SVG element */
+      return new ElementRect(
+        minX[r],
+        minY[r],
+        maxX[r] - minX[r] + 1,
+        maxY[r] - minY[r] + 1
+      );
+    }
+    /* Generate path SVG element, where holes need the even-odd rule */
+    Element e = new ElementPath(xy, loops);
+    if(loops.size() > 1){
+      e.addStyle("fill-rule:evenodd");
+    }
+    return e;
+  }
+
+  /**
+   * hull()
+   *
+   * Outline the span hull of a region, down the ends of its rows and back
+   * up their starts, with a point only where the outline turns.
+   *
+   * @param r The region.
+   * @param xy Where to add the corners of the outline, x then y for each.
+   **/
+  private void hull(int r, IntList xy){
+    int top = rowOff[r];
+    int rows = rowOff[r + 1] - top;
+    xy.add(starts[top], minY[r]);
+    xy.add(ends[top] + 1, minY[r]);
+    for(int k = 1; k < rows; k++){
+      if(ends[top + k] != ends[top + k - 1]){
+        xy.add(ends[top + k - 1] + 1, minY[r] + k);
+        xy.add(ends[top + k] + 1, minY[r] + k);
+      }
+    }
+    xy.add(ends[top + rows - 1] + 1, maxY[r] + 1);
+    xy.add(starts[top + rows - 1], maxY[r] + 1);
+    for(int k = rows - 1; k > 0; k--){
+      if(starts[top + k] != starts[top + k - 1]){
+        xy.add(starts[top + k], minY[r] + k);
+        xy.add(starts[top + k - 1], minY[r] + k);
+      }
+    }
+  }
+
+  /**
+   * edges()
+   *
+   * Find the edges between every region and the rest of the image (or the
+   * border), one pass over the map counting them for each region and
+   * another filling them in.
+   **/
+  private void edges(){
+    int cw = width + 1;
+    edgeOff = new int[count + 1];
+    for(int pass = 0; pass < 2; pass++){
+      int[] fill = pass == 0 ? null : Arrays.copyOf(edgeOff, count);
+      for(int y = 0; y < height; y++){
+        int row = y * width;
+        for(int x = 0; x < width; x++){
+          int i = row + x;
+          int r = label[i];
+          if(y == 0 || label[i - width] != r){
+            edge(fill, r, y * cw + x, RIGHT);
+          }
+          if(x == width - 1 || label[i + 1] != r){
+            edge(fill, r, y * cw + x + 1, DOWN);
+          }
+          if(y == height - 1 || label[i + width] != r){
+            edge(fill, r, (y + 1) * cw + x + 1, LEFT);
+          }
+          if(x == 0 || label[i - 1] != r){
+            edge(fill, r, (y + 1) * cw + x, UP);
+          }
+        }
+      }
+      if(pass == 0){
+        /* Turn the counts into offsets */
+        for(int r = 0, sum = 0; r <= count; r++){
+          int c = r < count ? edgeOff[r] : 0;
+          edgeOff[r] = sum;
+          sum += c;
+        }
+        edgeAt = new int[edgeOff[count]];
+        edgeDir = new int[edgeOff[count]];
+      }
+    }
+  }
+
+  /**
+   * edge()
+   *
+   * Count an edge of a region, or once counted, add it.
+   *
+   * @param fill The next free place for each region's edges, otherwise NULL
+   * to count the edges.
+   * @param r The region.
+   * @param v The starting corner.
+   * @param d The direction.
+   **/
+  private void edge(int[] fill, int r, int v, int d){
+    if(fill == null){
+      ++edgeOff[r];
+    }else{
+      int e = fill[r]++;
+      edgeAt[e] = v;
+      edgeDir[e] = d;
+    }
+  }
+
+  /**
+   * trace()
+   *
+   * Trace the outlines of a region. The edges of the region are linked by
+   * the corner they leave, then followed from corner to corner until each
+   * has been used once. Where two edges leave a corner, either will do, as
+   * filling the outlines with the even-odd rule gives the same shape.
+   *
+   * @param r The region.
+   * @param xy Where to add the corners of the outlines, x then y for each.
+   * @param loops Where to add the number of coordinates up to the end of each
+   * outline.
+   **/
+  private void trace(int r, IntList xy, IntList loops){
+    int cw = width + 1;
+    int[] step = new int[]{1, cw, -1, -cw};
+    if(edgeOff == null){
+      edges();
+      head = new int[cw * (height + 1)];
+      Arrays.fill(head, -1);
+    }
+    int e1 = edgeOff[r];
+    int n = edgeOff[r + 1] - e1;
+    /* Link the edges leaving each corner */
+    int[] link = new int[n];
+    for(int k = 0; k < n; k++){
+      int v = edgeAt[e1 + k];
+      link[k] = head[v];
+      head[v] = k;
+    }
+    /* Follow the edges round, keeping corners where the direction changes */
+    boolean[] used = new boolean[n];
+    for(int e0 = 0; e0 < n; e0++){
+      if(used[e0]){
+        continue;
+      }
+      int first = xy.size();
+      int dir = edgeDir[e1 + e0];
+      int prev = -1;
+      int e = e0;
+      while(e >= 0){
+        int v = edgeAt[e1 + e];
+        int d = edgeDir[e1 + e];
+        used[e] = true;
+        if(d != prev){
+          xy.add(v % cw, v / cw);
+        }
+        prev = d;
+        e = -1;
+        for(int k = head[v + step[d]]; k >= 0; k = link[k]){
+          if(!used[k]){
+            e = k;
+            break;
+          }
+        }
+      }
+      /* Starting mid-line, replace the first point with the last corner */
+      if(prev == dir){
+        xy.set(first, xy.get(xy.size() - 2));
+        xy.set(first + 1, xy.get(xy.size() - 1));
+        xy.truncate(xy.size() - 2);
+      }
+      loops.add(xy.size());
+    }
+    /* Leave the corners clear for the next region */
+    for(int k = 0; k < n; k++){
+      head[edgeAt[e1 + k]] = -1;
+    }
+  }
+}
@@ -1,9 +1,13 @@
 package b.img;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
 /**
@@ -12,10 +16,14 @@ import java.util.ArrayList;
  * An abstraction of the SVG data format.
  **/
 public class SVG{
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
   private int width;
   private int height;
   private ArrayList<String> defines;
   private ArrayList<Element> elements;
+  private Palette palette;
+  private String[] classes;
 
   /**
    * SVG()
@@ -32,6 +40,32 @@ public class SVG{
     elements = new ArrayList<Element>();
   }
 
+  /**
+   * SVG()
+   *
+   * Create an instance of a new SVG whose elements are filled from a
+   * palette, with one style class per palette colour.
+   *
+   * @param width Image width.
+   * @param height Image height.
+   * @param palette The palette, otherwise NULL to fill each element with its
+   * own style.
+   **/
+  public SVG(int width, int height, Palette palette){
+    this(width, height);
+    if(palette != null){
+      this.palette = palette;
+      classes = new String[palette.size()];
+      StringBuilder css = new StringBuilder("<style>");
+      for(int i = 0; i < classes.length; i++){
+        classes[i] = "c" + Integer.toString(i, 36);
+        css.append('.').append(classes[i]);
+        css.append("{fill:").append(hex(palette.getColour(i))).append('}');
+      }
+      addDefine(css.append("</style>").toString());
+    }
+  }
+
   /**
    * addDefine()
    *
@@ -58,6 +92,45 @@ public class SVG{
     return this;
   }
 
+  /**
+   * addElement()
+   *
+   * Add an element to the SVG, filled with a colour. With a palette the
+   * element takes the class of the nearest palette colour.
+   *
+   * @param e The element to be added.
+   * @param rgb The fill colour.
+   * @return An instance of this SVG object.
+   **/
+  public SVG addElement(Element e, int rgb){
+    if(palette != null){
+      e.setClassName(classes[palette.index(rgb)]);
+    }else{
+      e.addStyle("fill:" + hex(rgb));
+    }
+    return addElement(e);
+  }
+
+  /**
+   * hex()
+   *
+   * Convert a colour to its shortest hex notation, three digits where each
+   * channel repeats its digit, otherwise six.
+   *
+   * @param rgb The colour, the top byte being ignored.
+   * @return The colour with a leading hash.
+   **/
+  public static String hex(int rgb){
+    rgb &= 0xFFFFFF;
+    if(rgb == ((rgb & 0x0F0F0F) * 0x11)){
+      int c = ((rgb & 0x00000F)      ) |
+              ((rgb & 0x000F00) >>  4) |
+              ((rgb & 0x0F0000) >>  8);
+      return "#" + HEX[c >> 8] + HEX[(c >> 4) & 0xF] + HEX[c & 0xF];
+    }
+    return "#" + Integer.toHexString(0x1000000 | rgb).substring(1);
+  }
+
   /**
    * getElement()
    *
@@ -102,28 +175,62 @@ public class SVG{
    * Save the SVG to disk.
    *
    * @param out The file to be written to.
+   * @return True if the SVG was saved, otherwise false.
    **/
-  public void save(File out){
+  public boolean save(File out){
     try{
       FileWriter fw = new FileWriter(out.getAbsoluteFile());
       BufferedWriter bw = new BufferedWriter(fw);
-      bw.write("<svg width=\"" + width + "\" height=\"" + height + "\" ");
-      bw.write("xmlns=\"http://www.w3.org/2000/svg\">");
-      if(defines.size() > 0){
-        bw.write("<defs>");
-        for(String d : defines){
-          bw.write(d);
-        }
-        bw.write("</defs>");
-      }
-      for(Element e : elements){
-        bw.write(e.toString());
-      }
-      bw.write("</svg>");
+      write(bw);
       bw.close();
     }catch(IOException e){
       System.err.println("(internal) Unable to save SVG.");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * toBytes()
+   *
+   * Encode the SVG in memory.
+   *
+   * @return The UTF-8 encoded SVG.
+   **/
+  public byte[] toBytes(){
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try{
+      Writer w = new BufferedWriter(new OutputStreamWriter(baos, StandardCharsets.UTF_8));
+      write(w);
+      w.close();
+    }catch(IOException e){
+      /* Not possible in memory */
+    }
+    return baos.toByteArray();
+  }
+
+  /**
+   * write()
+   *
+   * Write the SVG out.
+   *
+   * @param bw The writer to write the SVG to.
+   * @throws IOException If the SVG could not be written.
+   **/
+  private void write(Writer bw) throws IOException{
+    bw.write("<svg width=\"" + width + "\" height=\"" + height + "\" ");
+    bw.write("xmlns=\"http://www.w3.org/2000/svg\">");
+    if(defines.size() > 0){
+      bw.write("<defs>");
+      for(String d : defines){
+        bw.write(d);
+      }
+      bw.write("</defs>");
+    }
+    for(Element e : elements){
+      bw.write(e.toString());
     }
+    bw.write("</svg>");
   }
 
   /**
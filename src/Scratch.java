@@ -0,0 +1,78 @@
+package b.img;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Scratch.java
+ *
+ * Working arrays owned by each thread and reused from one image to the
+ * next, so that a worker in its steady state allocates little more than
+ * the images it outputs. Each array only grows, to the largest size asked
+ * of it so far.
+ *
+ * The content of an array is left over from its last use, and an array may
+ * be longer than asked for. It must not be kept beyond the operation that
+ * asked for it, or passed to another thread unless the owner waits for
+ * that thread to finish with it.
+ **/
+public class Scratch{
+  /* Arrays larger than this (in elements) are not worth holding on to */
+  private static final int MAX_KEEP = 1 << 24;
+
+  /**
+   * SLOT
+   *
+   * The arrays each thread holds, one per use that may overlap another.
+   **/
+  public enum SLOT{
+    SOURCE,
+    REDUCED,
+    TEMP,
+    ACC;
+  }
+
+  private static final ThreadLocal<int[][]> INTS =
+    ThreadLocal.withInitial(() -> new int[SLOT.values().length][]);
+  private static final ThreadLocal<ByteArrayOutputStream> STREAM =
+    ThreadLocal.withInitial(() -> new ByteArrayOutputStream(65536));
+
+  /**
+   * ints()
+   *
+   * Get this thread's array for a slot, growing it where it's too short.
+   *
+   * @param slot The use of the array.
+   * @param size The minimum number of elements needed.
+   * @return An array of at least the given size.
+   **/
+  public static int[] ints(SLOT slot, int size){
+    if(size > MAX_KEEP){
+      return new int[size];
+    }
+    int[][] held = INTS.get();
+    int[] a = held[slot.ordinal()];
+    if(a == null || a.length < size){
+      a = new int[size];
+      held[slot.ordinal()] = a;
+    }
+    return a;
+  }
+
+  /**
+   * stream()
+   *
+   * Get this thread's stream for encoding into, emptied of its previous
+   * content.
+   *
+   * @return An empty stream.
+   **/
+  public static ByteArrayOutputStream stream(){
+    ByteArrayOutputStream baos = STREAM.get();
+    if(baos.size() > MAX_KEEP){
+      baos = new ByteArrayOutputStream(65536);
+      STREAM.set(baos);
+    }
+    baos.reset();
+    return baos;
+  }
+}
@@ -0,0 +1,347 @@
+package b.img;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+/**
+ * Server.java
+ *
+ * A long running preview server, avoiding the start up cost of the program
+ * for each batch. Previews are requested over HTTP on the local machine,
+ * either for a file on disk:
+ *
+ *   GET /preview?path=/img/1.jpg&format=jpeg&speed=normal&width=256&height=256
+ *
+ * Or for an image of up to 64MB uploaded as the request body:
+ *
+ *   POST /preview?format=png&width=128&height=128
+ *
+ * All parameters other than the input are optional and default to the same
+ * values as the command line. The resampling filter, palette, colour metric
+ * and byte limit are fixed for the server when it is started. Encoded
+ * previews are kept in a cache, and concurrent requests for the same preview
+ * are only generated once.
+ **/
+public class Server{
+  /* The largest image that may be uploaded, in bytes */
+  private static final int MAX_UPLOAD = 64 * 1024 * 1024;
+
+  private HttpServer server;
+  private Cache cache;
+  private ConcurrentHashMap<String, CompletableFuture<byte[]>> active;
+  private int jobs;
+  private Resample.FILTER filter;
+  private int colours;
+  private Distance.METRIC metric = Distance.METRIC.RGB;
+  private long maxBytes;
+
+  /**
+   * Server()
+   *
+   * Create the server on the loopback interface, ready to be started.
+   *
+   * @param port The port to listen on.
+   * @param jobs The number of requests to be handled at once.
+   * @param cacheBytes The maximum number of bytes of previews to cache.
+   * @throws IOException If the server could not be created.
+   **/
+  public Server(int port, int jobs, long cacheBytes) throws IOException{
+    this.jobs = jobs;
+    cache = new Cache(cacheBytes);
+    active = new ConcurrentHashMap<String, CompletableFuture<byte[]>>();
+    server = HttpServer.create(
+      new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+      0
+    );
+    server.createContext("/preview", this::handle);
+    server.setExecutor(Executors.newFixedThreadPool(jobs));
+  }
+
+  /**
+   * setFilter()
+   *
+   * Set the resampling filter, overriding the default for the speed.
+   *
+   * @param filter The filter to be used, otherwise NULL for the default.
+   **/
+  public void setFilter(Resample.FILTER filter){
+    this.filter = filter;
+  }
+
+  /**
+   * setPalette()
+   *
+   * Fill SVG elements from a palette chosen for each image.
+   *
+   * @param colours The maximum number of colours, otherwise zero for none.
+   **/
+  public void setPalette(int colours){
+    this.colours = colours;
+  }
+
+  /**
+   * setMetric()
+   *
+   * Set how the distance between colours is measured for SVG output.
+   *
+   * @param metric The colour distance measure.
+   **/
+  public void setMetric(Distance.METRIC metric){
+    this.metric = metric;
+  }
+
+  /**
+   * setMaxBytes()
+   *
+   * Keep each preview within a number of bytes.
+   *
+   * @param bytes The maximum bytes per preview, otherwise zero for no limit.
+   **/
+  public void setMaxBytes(long bytes){
+    this.maxBytes = bytes;
+  }
+
+  /**
+   * start()
+   *
+   * Start handling requests, after which the settings must not change.
+   **/
+  public void start(){
+    server.start();
+  }
+
+  /**
+   * handle()
+   *
+   * Handle a single preview request.
+   *
+   * @param ex The request to be handled.
+   * @throws IOException If the response could not be sent.
+   **/
+  private void handle(HttpExchange ex) throws IOException{
+    try{
+      HashMap<String, String> params = query(ex.getRequestURI().getRawQuery());
+      /* Parse the conversion parameters */
+      Convert.METHOD method;
+      Convert.SPEED speed;
+      Convert.FORMAT format;
+      int width;
+      int height;
+      try{
+        method = Convert.METHOD.valueOf(params.getOrDefault("method", "scale").toUpperCase());
+        speed = Convert.SPEED.valueOf(params.getOrDefault("speed", "normal").toUpperCase());
+        format = Convert.FORMAT.valueOf(params.getOrDefault("format", "jpeg").toUpperCase());
+        width = Integer.parseInt(params.getOrDefault("width", "256"));
+        height = Integer.parseInt(params.getOrDefault("height", "256"));
+      }catch(IllegalArgumentException e){
+        respond(ex, 400, "Invalid parameter.");
+        return;
+      }
+      if(width < 1 || height < 1){
+        respond(ex, 400, "Invalid width or height.");
+        return;
+      }
+      String key = method + "|" + speed + "|" +
+        (filter != null ? filter : "DEFAULT") + "|" + colours + "|" +
+        metric + "|" + maxBytes + "|" + format + "|" + width + "x" + height;
+      /* Find the input */
+      File file = null;
+      byte[] upload = null;
+      if("POST".equals(ex.getRequestMethod())){
+        upload = read(ex.getRequestBody(), MAX_UPLOAD);
+        if(upload == null){
+          respond(ex, 413, "Upload too large.");
+          return;
+        }
+        key += "|" + Manifest.hash(upload);
+      }else if(params.containsKey("path")){
+        file = new File(params.get("path"));
+        if(!file.isFile()){
+          respond(ex, 404, "No such file.");
+          return;
+        }
+        key += "|" + file.getAbsolutePath() + "|" + file.length() + ":" + file.lastModified();
+      }else{
+        respond(ex, 400, "No input given.");
+        return;
+      }
+      /* Serve from the cache where possible */
+      byte[] data = cache.get(key);
+      if(data == null){
+        data = generate(key, method, speed, new Target(format, width, height, null), file, upload);
+      }
+      if(data == null){
+        respond(ex, 415, "Unable to convert input.");
+        return;
+      }
+      ex.getResponseHeaders().set("Content-Type", format.getMime());
+      ex.sendResponseHeaders(200, data.length);
+      OutputStream os = ex.getResponseBody();
+      os.write(data);
+      os.close();
+    }catch(RuntimeException e){
+      System.err.println("(internal) Request failed: " + e);
+      respond(ex, 500, "Internal error.");
+    }finally{
+      ex.close();
+    }
+  }
+
+  /**
+   * generate()
+   *
+   * Generate a preview, or wait for the same preview already being
+   * generated by another request.
+   *
+   * @param key The key identifying the preview.
+   * @param method The conversion method.
+   * @param speed The conversion speed.
+   * @param target The preview to be generated.
+   * @param file The input file, otherwise NULL.
+   * @param upload The uploaded input, otherwise NULL.
+   * @return The encoded preview, otherwise NULL on failure.
+   **/
+  private byte[] generate(
+    String key,
+    Convert.METHOD method,
+    Convert.SPEED speed,
+    Target target,
+    File file,
+    byte[] upload
+  ){
+    CompletableFuture<byte[]> mine = new CompletableFuture<byte[]>();
+    CompletableFuture<byte[]> first = active.putIfAbsent(key, mine);
+    if(first != null){
+      try{
+        return first.get();
+      }catch(InterruptedException | ExecutionException e){
+        return null;
+      }
+    }
+    byte[] data = null;
+    try{
+      /* Another request may have finished it since the cache was checked */
+      data = cache.get(key);
+      if(data != null){
+        return data;
+      }
+      Process proc = null;
+      switch(method){
+        case SCALE :
+          proc = new ProcessScale();
+          break;
+      }
+      if(file != null){
+        proc.setInput(file);
+      }else{
+        proc.setInput(upload);
+      }
+      proc.setSpeed(speed);
+      proc.setInFlight(jobs);
+      proc.setFilter(filter);
+      proc.setPalette(colours);
+      proc.setMetric(metric);
+      proc.setMaxBytes(maxBytes);
+      proc.addTarget(target);
+      if(proc.isReady() && proc.load()){
+        proc.convert();
+        if(proc.save()){
+          data = target.getData();
+          cache.put(key, data);
+        }
+      }
+    }finally{
+      /* Always release those waiting, even on failure */
+      mine.complete(data);
+      active.remove(key);
+    }
+    return data;
+  }
+
+  /**
+   * respond()
+   *
+   * Send a plain text response.
+   *
+   * @param ex The request to respond to.
+   * @param code The HTTP status code.
+   * @param msg The message to be sent.
+   * @throws IOException If the response could not be sent.
+   **/
+  private static void respond(HttpExchange ex, int code, String msg) throws IOException{
+    byte[] data = (msg + "\n").getBytes(StandardCharsets.UTF_8);
+    ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    ex.sendResponseHeaders(code, data.length);
+    OutputStream os = ex.getResponseBody();
+    os.write(data);
+    os.close();
+  }
+
+  /**
+   * query()
+   *
+   * Parse the parameters of a request.
+   *
+   * @param raw The raw query string, may be NULL.
+   * @return The decoded parameters.
+   **/
+  private static HashMap<String, String> query(String raw){
+    HashMap<String, String> params = new HashMap<String, String>();
+    if(raw == null){
+      return params;
+    }
+    for(String p : raw.split("&")){
+      int eq = p.indexOf('=');
+      if(eq > 0){
+        try{
+          params.put(
+            URLDecoder.decode(p.substring(0, eq), "UTF-8"),
+            URLDecoder.decode(p.substring(eq + 1), "UTF-8")
+          );
+        }catch(UnsupportedEncodingException e){
+          /* Not possible for UTF-8 */
+        }
+      }
+    }
+    return params;
+  }
+
+  /**
+   * read()
+   *
+   * Read an entire stream into memory, up to a limit.
+   *
+   * @param is The stream to be read.
+   * @param max The most bytes to be read.
+   * @return The content of the stream, otherwise NULL if it is longer than
+   * the limit.
+   * @throws IOException If the stream could not be read.
+   **/
+  private static byte[] read(InputStream is, int max) throws IOException{
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    byte[] buff = new byte[65536];
+    int n;
+    while((n = is.read(buff)) > 0){
+      if(baos.size() + n > max){
+        return null;
+      }
+      baos.write(buff, 0, n);
+    }
+    return baos.toByteArray();
+  }
+}
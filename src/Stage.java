@@ -0,0 +1,92 @@
+package b.img;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stage.java
+ *
+ * A single stage of the conversion pipeline. Work is run on a fixed number of
+ * threads and at most a fixed number of tasks may be waiting, after which
+ * submitting blocks until there is room. This keeps the stages feeding each
+ * other from running too far ahead of one another.
+ **/
+public class Stage{
+  private ExecutorService pool;
+  private Semaphore slots;
+  private int queue;
+
+  /**
+   * Stage()
+   *
+   * Create a new pipeline stage.
+   *
+   * @param name The name of the stage, used to name its threads.
+   * @param threads The number of threads working on this stage.
+   * @param queue The number of tasks that may wait for a free thread.
+   **/
+  public Stage(String name, int threads, int queue){
+    AtomicInteger count = new AtomicInteger(0);
+    pool = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    slots = new Semaphore(threads + queue);
+    this.queue = queue;
+  }
+
+  /**
+   * getIdle()
+   *
+   * Get the number of threads with nothing to do, which is zero whenever
+   * tasks are waiting.
+   *
+   * @return The number of idle threads.
+   **/
+  public int getIdle(){
+    return Math.max(0, slots.availablePermits() - queue);
+  }
+
+  /**
+   * submit()
+   *
+   * Add a task to this stage, blocking whilst the stage is full.
+   *
+   * @param task The task to be run.
+   **/
+  public void submit(Runnable task){
+    slots.acquireUninterruptibly();
+    try{
+      pool.execute(() -> {
+        try{
+          task.run();
+        }catch(RuntimeException e){
+          System.err.println("(internal) Stage task failed: " + e);
+        }finally{
+          slots.release();
+        }
+      });
+    }catch(RuntimeException e){
+      slots.release();
+      throw e;
+    }
+  }
+
+  /**
+   * shutdown()
+   *
+   * Stop accepting tasks and wait for the queued tasks to complete.
+   **/
+  public void shutdown(){
+    pool.shutdown();
+    try{
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }catch(InterruptedException e){
+      /* Do nothing */
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package b.img;
+
+import java.io.File;
+
+/**
+ * Target.java
+ *
+ * A single output to be generated from an input image, describing the size
+ * and format it should be created with and where it should be written.
+ **/
+public class Target{
+  private Convert.FORMAT format;
+  private int width;
+  private int height;
+  private File output;
+  private boolean replace;
+  private byte[] data;
+
+  /**
+   * Target()
+   *
+   * Create a new output target.
+   *
+   * @param format The output format.
+   * @param width The maximum width of the output.
+   * @param height The maximum height of the output.
+   * @param output The file to be written, otherwise NULL to keep the
+   * encoded output in memory.
+   **/
+  public Target(Convert.FORMAT format, int width, int height, File output){
+    this.format = format;
+    this.width = width;
+    this.height = height;
+    this.output = output;
+  }
+
+  /**
+   * getFormat()
+   *
+   * Get the output format.
+   *
+   * @return The output format.
+   **/
+  public Convert.FORMAT getFormat(){
+    return format;
+  }
+
+  /**
+   * getWidth()
+   *
+   * Get the maximum width of the output.
+   *
+   * @return The maximum output width in pixels.
+   **/
+  public int getWidth(){
+    return width;
+  }
+
+  /**
+   * getHeight()
+   *
+   * Get the maximum height of the output.
+   *
+   * @return The maximum output height in pixels.
+   **/
+  public int getHeight(){
+    return height;
+  }
+
+  /**
+   * getOutput()
+   *
+   * Get the file to be written.
+   *
+   * @return The output file, otherwise NULL if kept in memory.
+   **/
+  public File getOutput(){
+    return output;
+  }
+
+  /**
+   * setReplace()
+   *
+   * Allow an existing output to be replaced, which is only done once the
+   * new output has been written in full.
+   **/
+  public void setReplace(){
+    replace = true;
+  }
+
+  /**
+   * isReplace()
+   *
+   * Check whether an existing output may be replaced.
+   *
+   * @return True if the output may be replaced, otherwise false.
+   **/
+  public boolean isReplace(){
+    return replace;
+  }
+
+  /**
+   * setData()
+   *
+   * Store the encoded output for a target kept in memory.
+   *
+   * @param data The encoded output.
+   **/
+  public void setData(byte[] data){
+    this.data = data;
+  }
+
+  /**
+   * getData()
+   *
+   * Get the encoded output for a target kept in memory.
+   *
+   * @return The encoded output, otherwise NULL if not generated.
+   **/
+  public byte[] getData(){
+    return data;
+  }
+}
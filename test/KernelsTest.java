@@ -0,0 +1,168 @@
+package b.img;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * KernelsTest.java
+ *
+ * Check that the vectorized kernels give exactly the same results as the
+ * scalar ones, over every short width (covering each tail of a whole
+ * vector), random longer widths, offsets and edge case values. Run with
+ * "ant test", which needs the incubating Vector API; any disagreement is
+ * printed and fails the run.
+ **/
+public class KernelsTest{
+  /* Every width up to this is tested, beyond it widths are random */
+  private static final int SHORT = 160;
+  private static final int LONG = 64;
+  private static final int MAX_WIDTH = 5000;
+
+  private Kernels scalar = new Kernels();
+  private Kernels vector = new KernelsVector();
+  private Random rand = new Random(1);
+  private int checks = 0;
+  private int failures = 0;
+
+  /**
+   * main()
+   *
+   * Run every check, exiting with a failure status on any disagreement.
+   *
+   * @param args The command line arguments, an optional random seed.
+   **/
+  public static void main(String[] args){
+    KernelsTest t = new KernelsTest();
+    if(args.length > 0){
+      t.rand = new Random(Long.parseLong(args[0]));
+    }
+    System.out.println("Testing " + t.vector.getName() + " against " + t.scalar.getName());
+    for(int w = 0; w <= SHORT; w++){
+      t.all(w);
+    }
+    for(int k = 0; k < LONG; k++){
+      t.all(SHORT + 1 + t.rand.nextInt(MAX_WIDTH - SHORT));
+    }
+    System.out.println(t.checks + " checks, " + t.failures + " failures");
+    if(t.failures > 0){
+      System.exit(1);
+    }
+  }
+
+  /**
+   * all()
+   *
+   * Run every check at a width.
+   *
+   * @param w The width.
+   **/
+  private void all(int w){
+    unpack(w);
+    accumulate(w);
+    run(w);
+  }
+
+  /**
+   * unpack()
+   *
+   * Check unpacking, both with exactly enough bytes and with slack after
+   * them, as the vector loads read past the last pixel when they can.
+   *
+   * @param n The number of pixels.
+   **/
+  private void unpack(int n){
+    for(int slack = 0; slack <= 4; slack += 4){
+      byte[] bgr = new byte[n * 3 + slack];
+      rand.nextBytes(bgr);
+      int[] a = new int[n];
+      int[] b = new int[n];
+      scalar.unpack(bgr, a, n);
+      vector.unpack(bgr, b, n);
+      check(Arrays.equals(a, b), "unpack n=" + n + " slack=" + slack);
+    }
+  }
+
+  /**
+   * accumulate()
+   *
+   * Check weighted sums from an offset row, with random, extreme and
+   * negative weights over pixels with every bit pattern, so that any
+   * overflow must also wrap the same way.
+   *
+   * @param w The width.
+   **/
+  private void accumulate(int w){
+    int so = rand.nextInt(8);
+    int[] src = new int[so + w];
+    for(int x = 0; x < src.length; x++){
+      src[x] = rand.nextInt();
+    }
+    if(w > 0){
+      src[so] = 0xFFFFFFFF;
+      src[so + w - 1] = 0;
+    }
+    int[] weights = new int[]{
+      0, 1, -1, rand.nextInt(1 << 15) - (1 << 13), Integer.MAX_VALUE, Integer.MIN_VALUE
+    };
+    int[] a = new int[w * 4];
+    int[] b = new int[w * 4];
+    for(int weight : weights){
+      scalar.accumulate(src, so, w, weight, a);
+      vector.accumulate(src, so, w, weight, b);
+      check(Arrays.equals(a, b), "accumulate w=" + w + " so=" + so + " weight=" + weight);
+    }
+  }
+
+  /**
+   * run()
+   *
+   * Check colour runs ending at each position in turn, from an offset, and
+   * runs that never end, with limits at and around the distances found.
+   *
+   * @param n The number of pixels.
+   **/
+  private void run(int n){
+    int from = n > 0 ? rand.nextInt(Math.min(n, 8)) : 0;
+    int[] px = new int[n];
+    /* Limits of zero and one end runs at any and any differing pixel */
+    int[] limits = new int[]{0, 1, 2, 3 * 255 * 255, 3 * 255 * 255 + 1, 1024};
+    int c = rand.nextInt();
+    /* Every end when short, otherwise a sample of them */
+    int step = n <= SHORT ? 1 : Math.max(1, n / 97);
+    for(int e = from; e <= n; e += step){
+      for(int x = 0; x < n; x++){
+        /* Small wobbles, the top byte ignored, and one far pixel */
+        px[x] = (c ^ (rand.nextInt(8) * 0x010101)) ^ (rand.nextInt() & 0xFF000000);
+        if(x == e){
+          px[x] = c ^ 0x808080;
+        }
+      }
+      for(int limit : limits){
+        int a = scalar.run(px, from, n, c, limit);
+        int b = vector.run(px, from, n, c, limit);
+        check(a == b, "run n=" + n + " from=" + from + " end=" + e + " limit=" + limit + " scalar=" + a + " vector=" + b);
+      }
+    }
+    /* An empty range */
+    check(
+      scalar.run(px, n, n, c, 1) == vector.run(px, n, n, c, 1),
+      "run n=" + n + " empty"
+    );
+  }
+
+  /**
+   * check()
+   *
+   * Record a check, printing it if it failed.
+   *
+   * @param ok True if the check passed.
+   * @param what A description of the check.
+   **/
+  private void check(boolean ok, String what){
+    ++checks;
+    if(!ok){
+      ++failures;
+      System.err.println("FAIL " + what);
+    }
+  }
+}